@@ -24,6 +24,9 @@
 package ru.maxeltr.homeMq2t.Config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.net.NetworkInterface;
 import java.net.SocketException;
@@ -31,6 +34,7 @@ import java.time.Duration;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,11 +49,16 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.support.PeriodicTrigger;
 import ru.maxeltr.homeMq2t.AppShutdownManager;
+import ru.maxeltr.homeMq2t.Controller.CardUpdateBatcher;
+import ru.maxeltr.homeMq2t.Controller.SlowConsumerGuard;
 import ru.maxeltr.homeMq2t.Mqtt.HmMq2t;
 import ru.maxeltr.homeMq2t.Mqtt.HmMq2tImpl;
 import ru.maxeltr.homeMq2t.Mqtt.MqttAckMediator;
 import ru.maxeltr.homeMq2t.Mqtt.MqttAckMediatorImpl;
 import ru.maxeltr.homeMq2t.Mqtt.MqttChannelInitializer;
+import ru.maxeltr.homeMq2t.Mqtt.MqttInboundExecutor;
+import ru.maxeltr.homeMq2t.Mqtt.MqttOutboundJournal;
+import ru.maxeltr.homeMq2t.Mqtt.MqttTransport;
 import ru.maxeltr.homeMq2t.Service.ProcessExecutor;
 import ru.maxeltr.homeMq2t.Service.ProcessExecutorImpl;
 import ru.maxeltr.homeMq2t.Service.ServiceMediator;
@@ -63,8 +72,12 @@ import ru.maxeltr.homeMq2t.Service.UI.ConnectManagerImpl;
 import ru.maxeltr.homeMq2t.Service.UI.DashboardItemCardManagerImpl;
 import ru.maxeltr.homeMq2t.Service.UI.HtmlSanitizer;
 import ru.maxeltr.homeMq2t.Service.UI.HtmlSanitizerImpl;
+import ru.maxeltr.homeMq2t.Service.UI.LastValueCache;
 import ru.maxeltr.homeMq2t.Service.UI.Base64HtmlJsonFormatterImpl;
+import ru.maxeltr.homeMq2t.Service.UI.BinaryPayloadStore;
 import ru.maxeltr.homeMq2t.Service.UI.DashboardItemMqttSettingManagerImpl;
+import ru.maxeltr.homeMq2t.Service.UI.DisplayConflator;
+import ru.maxeltr.homeMq2t.Service.UI.DisplayConflatorImpl;
 import ru.maxeltr.homeMq2t.Service.UI.DisplayManager;
 import ru.maxeltr.homeMq2t.Service.UI.DisplayManagerImpl;
 import ru.maxeltr.homeMq2t.Service.UI.LocalTaskManager;
@@ -148,6 +161,21 @@ public class AppAnnotationConfig {
         return new MqttChannelInitializer();
     }
 
+    @Bean(destroyMethod = "shutdown")
+    public MqttTransport getMqttTransport() {
+        return new MqttTransport();
+    }
+
+    @Bean(destroyMethod = "close")
+    public MqttOutboundJournal getMqttOutboundJournal() {
+        return new MqttOutboundJournal();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public MqttInboundExecutor getMqttInboundExecutor() {
+        return new MqttInboundExecutor();
+    }
+
     @Bean
     public MqttAckMediator getMqttAckMediator() {
         return new MqttAckMediatorImpl();
@@ -189,12 +217,10 @@ public class AppAnnotationConfig {
         return periodicTrigger;
     }
 
-    @Bean(name = "retransmitPeriodicTrigger")
-    public PeriodicTrigger retransmitPeriodicTrigger() {
-        Duration duration = Duration.ofMillis(Integer.parseInt(this.env.getProperty("retransmit-delay", "60000")));
-        PeriodicTrigger periodicTrigger = new PeriodicTrigger(duration);
-        periodicTrigger.setInitialDelay(duration);
-        return periodicTrigger;
+    @Bean(name = "retransmitTimer", destroyMethod = "stop")
+    public Timer retransmitTimer() {
+        long tick = Long.parseLong(this.env.getProperty("retransmit-timer-tick", "100"));
+        return new HashedWheelTimer(new DefaultThreadFactory("Mq2tRetransmitTimer", true), tick, TimeUnit.MILLISECONDS);
     }
 
     @Bean
@@ -222,6 +248,26 @@ public class AppAnnotationConfig {
         return new HtmlSanitizerImpl();
     }
 
+    @Bean
+    public BinaryPayloadStore getBinaryPayloadStore() {
+        return new BinaryPayloadStore();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public CardUpdateBatcher getCardUpdateBatcher() {
+        return new CardUpdateBatcher();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public SlowConsumerGuard getSlowConsumerGuard() {
+        return new SlowConsumerGuard();
+    }
+
+    @Bean(destroyMethod = "clear")
+    public LastValueCache getLastValueCache() {
+        return new LastValueCache();
+    }
+
     @Bean
     public UIJsonFormatter getJsonCreator() {
         return new Base64HtmlJsonFormatterImpl();
@@ -242,6 +288,11 @@ public class AppAnnotationConfig {
         return new CardPropertiesProviderImpl();
     }
 
+    @Bean
+    public ConfigSnapshotProvider getConfigSnapshotProvider() {
+        return new ConfigSnapshotProviderImpl();
+    }
+
     @Bean
     public StartupTaskPropertiesProvider getStartupTaskPropertiesProvider() {
         return getAppProperty();
@@ -257,6 +308,11 @@ public class AppAnnotationConfig {
         return new DisplayManagerImpl();
     }
 
+    @Bean(destroyMethod = "shutdown")
+    public DisplayConflator getDisplayConflator() {
+        return new DisplayConflatorImpl();
+    }
+
     @Bean
     public SubscriptionService getSubscriptionService() {
         return new SubscriptionServiceImpl();
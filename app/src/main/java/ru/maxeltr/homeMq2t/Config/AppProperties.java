@@ -77,6 +77,9 @@ public class AppProperties implements StartupTaskPropertiesProvider {
     @Autowired
     private DashboardRepository dashboardRepository;
 
+    @Autowired
+    private ConfigSnapshotProvider configSnapshotProvider;
+
     private final List<String> emptyArray = List.of();
 
     private static final Logger logger = LoggerFactory.getLogger(AppProperties.class);
@@ -143,7 +146,20 @@ public class AppProperties implements StartupTaskPropertiesProvider {
     }
 
     public MqttSettingsEntity saveMqttSettingsEntity(MqttSettingsEntity entity) {
-        return this.mqttSettingsRepository.save(entity);
+        MqttSettingsEntity saved = this.mqttSettingsRepository.save(entity);
+        this.configSnapshotProvider.reloadMqttSettings();
+
+        return saved;
+    }
+
+    /**
+     * Retrieves the MQTT settings from the current settings snapshot.
+     *
+     * @return an Optional containing the MQTT settings if they are defined,
+     * otherwise an empty Optional
+     */
+    private Optional<MqttConfig> getMqttConfig() {
+        return this.configSnapshotProvider.getSnapshot().getMqttConfig();
     }
 
     public Optional<ViewModel<MqttSettingsEntity>> getMqttSettings(String name) {
@@ -190,62 +206,62 @@ public class AppProperties implements StartupTaskPropertiesProvider {
     }
 
     public String getHost() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getHost).orElse("");
+        return this.getMqttConfig().map(MqttConfig::getHost).orElse("");
     }
 
     public String getPort() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getPort).orElse("1883");
+        return this.getMqttConfig().map(MqttConfig::getPort).orElse("1883");
     }
 
     public Boolean getCleanSession() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getCleanSession).orElse(false);
+        return this.getMqttConfig().map(MqttConfig::getCleanSession).orElse(false);
     }
 
     public Boolean getReconnect() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getReconnect).orElse(false);
+        return this.getMqttConfig().map(MqttConfig::getReconnect).orElse(false);
     }
 
     public Boolean getAutoConnect() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getAutoConnect).orElse(false);
+        return this.getMqttConfig().map(MqttConfig::getAutoConnect).orElse(false);
     }
 
     public Boolean getHasUsername() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getHasUsername).orElse(false);
+        return this.getMqttConfig().map(MqttConfig::getHasUsername).orElse(false);
     }
 
     public Boolean getHasPassword() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getHasPassword).orElse(false);
+        return this.getMqttConfig().map(MqttConfig::getHasPassword).orElse(false);
     }
 
     public Boolean getWillRetain() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getWillRetain).orElse(false);
+        return this.getMqttConfig().map(MqttConfig::getWillRetain).orElse(false);
     }
 
     public Integer getWillQos() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getWillQos).flatMap(AppUtils::safeParseInt).orElse(0);
+        return this.getMqttConfig().map(MqttConfig::getWillQos).flatMap(AppUtils::safeParseInt).orElse(0);
     }
 
     public Boolean getWillFlag() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getWillFlag).orElse(false);
+        return this.getMqttConfig().map(MqttConfig::getWillFlag).orElse(false);
     }
 
     public String getClientId() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getClientId).orElse(UUID.randomUUID().toString());
+        return this.getMqttConfig().map(MqttConfig::getClientId).orElse(UUID.randomUUID().toString());
     }
 
     public String getWillTopic() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getWillTopic).orElse("");
+        return this.getMqttConfig().map(MqttConfig::getWillTopic).orElse("");
     }
 
     public String getWillMessage() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getWillMessage).orElse("");
+        return this.getMqttConfig().map(MqttConfig::getWillMessage).orElse("");
     }
 
     public String getUsername() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getMq2tUsername).orElse("");
+        return this.getMqttConfig().map(MqttConfig::getMq2tUsername).orElse("");
     }
 
     public String getPassword() {
-        return mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttSettingsEntity::getMq2tPassword).orElse("");
+        return this.getMqttConfig().map(MqttConfig::getMq2tPassword).orElse("");
     }
 }
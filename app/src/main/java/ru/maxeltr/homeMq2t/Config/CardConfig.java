@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Config;
+
+import java.util.List;
+import ru.maxeltr.homeMq2t.Entity.CardEntity;
+
+/**
+ * Immutable copy of the card settings. It is detached from the persistence
+ * context and may be shared between threads.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public final class CardConfig {
+
+    private final Integer number;
+    private final String name;
+    private final String subscriptionTopic;
+    private final String subscriptionQos;
+    private final String subscriptionDataName;
+    private final String subscriptionDataType;
+    private final String displayDataJsonpath;
+    private final List<JsonPathExpression> displayDataJsonPaths;
+    private final String publicationTopic;
+    private final String publicationQos;
+    private final Boolean publicationRetain;
+    private final String publicationData;
+    private final String publicationDataType;
+    private final String localTaskPath;
+    private final String localTaskArguments;
+    private final String localTaskDataType;
+    private final Integer dashboardNumber;
+
+    public CardConfig(CardEntity entity) {
+        this.number = entity.getNumber();
+        this.name = entity.getName();
+        this.subscriptionTopic = entity.getSubscriptionTopic();
+        this.subscriptionQos = entity.getSubscriptionQos();
+        this.subscriptionDataName = entity.getSubscriptionDataName();
+        this.subscriptionDataType = entity.getSubscriptionDataType();
+        this.displayDataJsonpath = entity.getDisplayDataJsonpath();
+        this.displayDataJsonPaths = JsonPathExpression.compileAll(this.displayDataJsonpath);
+        this.publicationTopic = entity.getPublicationTopic();
+        this.publicationQos = entity.getPublicationQos();
+        this.publicationRetain = entity.getPublicationRetain();
+        this.publicationData = entity.getPublicationData();
+        this.publicationDataType = entity.getPublicationDataType();
+        this.localTaskPath = entity.getLocalTaskPath();
+        this.localTaskArguments = entity.getLocalTaskArguments();
+        this.localTaskDataType = entity.getLocalTaskDataType();
+        this.dashboardNumber = entity.getDashboard() != null ? entity.getDashboard().getNumber() : null;
+    }
+
+    public Integer getNumber() {
+        return number;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSubscriptionTopic() {
+        return subscriptionTopic;
+    }
+
+    public String getSubscriptionQos() {
+        return subscriptionQos;
+    }
+
+    public String getSubscriptionDataName() {
+        return subscriptionDataName;
+    }
+
+    public String getSubscriptionDataType() {
+        return subscriptionDataType;
+    }
+
+    public String getDisplayDataJsonpath() {
+        return displayDataJsonpath;
+    }
+
+    public List<JsonPathExpression> getDisplayDataJsonPaths() {
+        return displayDataJsonPaths;
+    }
+
+    public String getPublicationTopic() {
+        return publicationTopic;
+    }
+
+    public String getPublicationQos() {
+        return publicationQos;
+    }
+
+    public Boolean getPublicationRetain() {
+        return publicationRetain;
+    }
+
+    public String getPublicationData() {
+        return publicationData;
+    }
+
+    public String getPublicationDataType() {
+        return publicationDataType;
+    }
+
+    public String getLocalTaskPath() {
+        return localTaskPath;
+    }
+
+    public String getLocalTaskArguments() {
+        return localTaskArguments;
+    }
+
+    public String getLocalTaskDataType() {
+        return localTaskDataType;
+    }
+
+    public Integer getDashboardNumber() {
+        return dashboardNumber;
+    }
+
+    @Override
+    public String toString() {
+        return "CardConfig{" + "number=" + number + ", name=" + name + ", subscriptionTopic=" + subscriptionTopic + ", subscriptionQos=" + subscriptionQos + ", subscriptionDataType=" + subscriptionDataType + ", publicationTopic=" + publicationTopic + ", dashboardNumber=" + dashboardNumber + '}';
+    }
+}
@@ -55,10 +55,10 @@ public interface CardPropertiesProvider {
      * Retrieves the list of card numbers associated with a specific
      * subscriptoin topic.
      *
-     * The metod searches for card numbers that are subscribed to the given
-     * topic within the dashboard.
+     * The metod searches for card numbers whose subscription topic filter
+     * matches the given topic, including filters with the wildcards + and #.
      *
-     * @param topic the subscription topic for which to retrieve card numbers.
+     * @param topic the topic name for which to retrieve card numbers.
      * @return a list of card numbers subscribed to the specified topic, returns
      * empty list if no cards are found for the topic.
      */
@@ -126,6 +126,14 @@ public interface CardPropertiesProvider {
      */
     public String getCardSubDataType(String number);
 
+    /**
+     * Retrieves the number of the dashboard the specified card belongs to.
+     *
+     * @param number the number of the card
+     * @return the dashboard number if found, or an empty string.
+     */
+    public String getCardDashboardNumber(String number);
+
     /**
      * Retrieves the jsonpath expression associated with the specified card
      * number.
@@ -136,6 +144,17 @@ public interface CardPropertiesProvider {
      */
     public String getCardJsonPathExpression(String number);
 
+    /**
+     * Retrieves the compiled jsonpath expressions associated with the
+     * specified card number. The expressions are compiled when the card
+     * settings are loaded or saved.
+     *
+     * @param number the number of the card for which to retrieve the jsonpath
+     * expressions
+     * @return the compiled expressions if found, or an empty list.
+     */
+    public List<JsonPathExpression> getCardJsonPaths(String number);
+
     /**
      * Retrieves the publication topic associated with the specified card
      * number.
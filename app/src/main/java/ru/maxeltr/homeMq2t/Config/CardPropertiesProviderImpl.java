@@ -27,6 +27,7 @@ import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttTopicSubscription;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -67,6 +68,9 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
     @Qualifier("getDashboardPropertiesProvider")
     private DashboardPropertiesProvider dashboardPropertiesProvider;
 
+    @Autowired
+    private ConfigSnapshotProvider configSnapshotProvider;
+
     /**
      * Retrieves the CardEntity for the specified card number.
      *
@@ -88,7 +92,10 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public CardEntity saveCardEntity(CardEntity cardEntity) {
-        return this.cardRepository.save(cardEntity);
+        CardEntity saved = this.cardRepository.save(cardEntity);
+        this.configSnapshotProvider.reloadCards();
+
+        return saved;
     }
 
     /**
@@ -99,6 +106,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
     @Override
     public void deleteCard(String id) {
         this.cardRepository.deleteById(Long.valueOf(id));
+        this.configSnapshotProvider.reloadCards();
     }
 
     /**
@@ -171,22 +179,30 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      * Retrieves the list of card numbers associated with a specific
      * subscriptoin topic.
      *
-     * The metod searches for card numbers that are subscribed to the given
-     * topic within the dashboard.
+     * The metod resolves the topic against the index of card subscription
+     * topic filters of the current settings snapshot, so the wildcards + and #
+     * of the filters are taken into account and no database access is
+     * performed.
      *
-     * @param topic the subscription topic for which to retrieve card numbers.
+     * @param topic the topic name of a received message.
      * @return a list of card numbers subscribed to the specified topic, returns
      * empty list if no cards are found for the topic.
      */
     @Override
     public List<String> getCardNumbersByTopic(String topic) {
-        List<String> cardNumbers = new ArrayList<>();
-        List<CardEntity> cards = cardRepository.findBySubscriptionTopic(topic);
-        cards.forEach(card -> {
-            cardNumbers.add(String.valueOf(card.getNumber()));
-        });
+        return this.configSnapshotProvider.getSnapshot().getTopicIndex().match(topic);
+    }
 
-        return cardNumbers;
+    /**
+     * Looks up the card settings in the current snapshot.
+     *
+     * @param number The card number as a String
+     * @return an Optional containing the card settings if found, otherwise an
+     * empty Optional
+     */
+    private Optional<CardConfig> findCard(String number) {
+        ConfigSnapshot snapshot = this.configSnapshotProvider.getSnapshot();
+        return AppUtils.safeParseInt(number).flatMap(snapshot::getCard);
     }
 
     /**
@@ -198,7 +214,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardName(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getName).orElse("");
+        return this.findCard(number).map(CardConfig::getName).orElse("");
     }
 
     /**
@@ -209,7 +225,12 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardNumber(String name) {
-        return cardRepository.findByName(name).map(CardEntity::getNumber).map(String::valueOf).orElse("");
+        return this.configSnapshotProvider.getSnapshot().getCards().stream()
+                .filter(card -> Objects.equals(card.getName(), name))
+                .map(CardConfig::getNumber)
+                .map(String::valueOf)
+                .findFirst()
+                .orElse("");
     }
 
     /**
@@ -222,7 +243,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardSubTopic(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getSubscriptionTopic).orElse("");
+        return this.findCard(number).map(CardConfig::getSubscriptionTopic).orElse("");
     }
 
     /**
@@ -235,7 +256,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardSubQos(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getSubscriptionQos).orElse("AT_MOST_ONCE");
+        return this.findCard(number).map(CardConfig::getSubscriptionQos).orElse("AT_MOST_ONCE");
     }
 
     /**
@@ -248,7 +269,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardSubDataName(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getSubscriptionDataName).orElse("");
+        return this.findCard(number).map(CardConfig::getSubscriptionDataName).orElse("");
     }
 
     /**
@@ -261,7 +282,18 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardSubDataType(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getSubscriptionDataType).orElse("");
+        return this.findCard(number).map(CardConfig::getSubscriptionDataType).orElse("");
+    }
+
+    /**
+     * Retrieves the number of the dashboard the specified card belongs to.
+     *
+     * @param number the number of the card
+     * @return the dashboard number if found, or an empty string.
+     */
+    @Override
+    public String getCardDashboardNumber(String number) {
+        return this.findCard(number).map(CardConfig::getDashboardNumber).map(String::valueOf).orElse("");
     }
 
     /**
@@ -274,7 +306,21 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardJsonPathExpression(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getDisplayDataJsonpath).orElse("");
+        return this.findCard(number).map(CardConfig::getDisplayDataJsonpath).orElse("");
+    }
+
+    /**
+     * Retrieves the compiled jsonpath expressions associated with the
+     * specified card number. The expressions are compiled when the card
+     * settings are loaded or saved.
+     *
+     * @param number the number of the card for which to retrieve the jsonpath
+     * expressions
+     * @return the compiled expressions if found, or an empty list.
+     */
+    @Override
+    public List<JsonPathExpression> getCardJsonPaths(String number) {
+        return this.findCard(number).map(CardConfig::getDisplayDataJsonPaths).orElse(List.of());
     }
 
     /**
@@ -287,7 +333,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardPubTopic(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getPublicationTopic).orElse("");
+        return this.findCard(number).map(CardConfig::getPublicationTopic).orElse("");
     }
 
     /**
@@ -300,7 +346,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardPubQos(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getPublicationQos).orElse("AT_MOST_ONCE");
+        return this.findCard(number).map(CardConfig::getPublicationQos).orElse("AT_MOST_ONCE");
     }
 
     /**
@@ -313,7 +359,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardPubRetain(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getPublicationRetain).map(String::valueOf).orElse("false");
+        return this.findCard(number).map(CardConfig::getPublicationRetain).map(String::valueOf).orElse("false");
     }
 
     /**
@@ -325,7 +371,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardPubData(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getPublicationData).orElse("");
+        return this.findCard(number).map(CardConfig::getPublicationData).orElse("");
     }
 
     /**
@@ -338,7 +384,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardPubDataType(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getPublicationDataType).orElse("");
+        return this.findCard(number).map(CardConfig::getPublicationDataType).orElse("");
     }
 
     /**
@@ -350,7 +396,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardLocalTaskPath(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getLocalTaskPath).orElse("");
+        return this.findCard(number).map(CardConfig::getLocalTaskPath).orElse("");
     }
 
     /**
@@ -363,7 +409,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardLocalTaskArguments(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getLocalTaskArguments).orElse("");
+        return this.findCard(number).map(CardConfig::getLocalTaskArguments).orElse("");
     }
 
     /**
@@ -376,7 +422,7 @@ public class CardPropertiesProviderImpl implements CardPropertiesProvider {
      */
     @Override
     public String getCardLocalTaskDataType(String number) {
-        return AppUtils.safeParseInt(number).flatMap(cardRepository::findByNumber).map(CardEntity::getLocalTaskDataType).orElse("");
+        return this.findCard(number).map(CardConfig::getLocalTaskDataType).orElse("");
     }
 
     /**
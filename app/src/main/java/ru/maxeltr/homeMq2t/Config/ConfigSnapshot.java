@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Config;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import ru.maxeltr.homeMq2t.Mqtt.MqttTopicTrie;
+
+/**
+ * Immutable, versioned view of the card and MQTT settings. A new snapshot is
+ * created on every change of the settings, so the instance may be read by any
+ * number of threads without locking.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public final class ConfigSnapshot {
+
+    private final long version;
+
+    private final Map<Integer, CardConfig> cards;
+
+    private final MqttTopicTrie<String> topicIndex;
+
+    private final MqttConfig mqttConfig;
+
+    public ConfigSnapshot(long version, Map<Integer, CardConfig> cards, MqttTopicTrie<String> topicIndex, MqttConfig mqttConfig) {
+        this.version = version;
+        this.cards = Map.copyOf(cards);
+        this.topicIndex = topicIndex;
+        this.mqttConfig = mqttConfig;
+    }
+
+    /**
+     * Returns the version of the snapshot. The version is incremented each
+     * time the settings are changed.
+     *
+     * @return the version of the snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Optional<CardConfig> getCard(Integer number) {
+        return number == null ? Optional.empty() : Optional.ofNullable(this.cards.get(number));
+    }
+
+    public Collection<CardConfig> getCards() {
+        return this.cards.values();
+    }
+
+    /**
+     * Returns the index of card numbers by subscription topic filter.
+     *
+     * @return the topic index
+     */
+    public MqttTopicTrie<String> getTopicIndex() {
+        return topicIndex;
+    }
+
+    public Optional<MqttConfig> getMqttConfig() {
+        return Optional.ofNullable(mqttConfig);
+    }
+
+    ConfigSnapshot withCards(Map<Integer, CardConfig> cards, MqttTopicTrie<String> topicIndex) {
+        return new ConfigSnapshot(this.version + 1, cards, topicIndex, this.mqttConfig);
+    }
+
+    ConfigSnapshot withMqttConfig(MqttConfig mqttConfig) {
+        return new ConfigSnapshot(this.version + 1, this.cards, this.topicIndex, mqttConfig);
+    }
+}
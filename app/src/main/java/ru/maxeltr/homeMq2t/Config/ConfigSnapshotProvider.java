@@ -0,0 +1,51 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Config;
+
+/**
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public interface ConfigSnapshotProvider {
+
+    /**
+     * Returns the current snapshot of the settings. The method does not block
+     * and does not access the database once the snapshot has been loaded.
+     *
+     * @return the current snapshot of the settings
+     */
+    public ConfigSnapshot getSnapshot();
+
+    /**
+     * Reloads the card settings from the database and publishes a new
+     * snapshot.
+     */
+    public void reloadCards();
+
+    /**
+     * Reloads the MQTT settings from the database and publishes a new
+     * snapshot.
+     */
+    public void reloadMqttSettings();
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.maxeltr.homeMq2t.Entity.CardEntity;
+import ru.maxeltr.homeMq2t.Entity.MqttSettingsEntity;
+import ru.maxeltr.homeMq2t.Mqtt.MqttTopicTrie;
+import ru.maxeltr.homeMq2t.Repository.CardRepository;
+import ru.maxeltr.homeMq2t.Repository.MqttSettingsRepository;
+
+/**
+ * Holds the copy-on-write snapshot of the card and MQTT settings. Readers get
+ * the current snapshot from an atomic reference. Writers are serialized, build
+ * a new snapshot from the database and swap it in atomically.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class ConfigSnapshotProviderImpl implements ConfigSnapshotProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigSnapshotProviderImpl.class);
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private MqttSettingsRepository mqttSettingsRepository;
+
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+
+    @Override
+    public ConfigSnapshot getSnapshot() {
+        ConfigSnapshot current = this.snapshot.get();
+        if (current == null) {
+            current = this.load();
+        }
+
+        return current;
+    }
+
+    @Override
+    public synchronized void reloadCards() {
+        ConfigSnapshot current = this.getSnapshot();
+        Map<Integer, CardConfig> cards = this.loadCards();
+        ConfigSnapshot next = current.withCards(cards, this.createTopicIndex(cards));
+        this.snapshot.set(next);
+        logger.debug("Card settings have been reloaded. Snapshot version={}. Amount of cards={}.", next.getVersion(), cards.size());
+    }
+
+    @Override
+    public synchronized void reloadMqttSettings() {
+        ConfigSnapshot current = this.getSnapshot();
+        ConfigSnapshot next = current.withMqttConfig(this.loadMqttConfig());
+        this.snapshot.set(next);
+        logger.debug("Mqtt settings have been reloaded. Snapshot version={}.", next.getVersion());
+    }
+
+    private synchronized ConfigSnapshot load() {
+        ConfigSnapshot current = this.snapshot.get();
+        if (current != null) {
+            return current;
+        }
+
+        Map<Integer, CardConfig> cards = this.loadCards();
+        current = new ConfigSnapshot(1, cards, this.createTopicIndex(cards), this.loadMqttConfig());
+        this.snapshot.set(current);
+        logger.info("Settings snapshot has been loaded. Amount of cards={}.", cards.size());
+
+        return current;
+    }
+
+    private Map<Integer, CardConfig> loadCards() {
+        Map<Integer, CardConfig> cards = new HashMap<>();
+        for (CardEntity cardEntity : this.cardRepository.findAll()) {
+            if (cardEntity.getNumber() == null) {
+                logger.warn("Card has no number and was skipped. {}", cardEntity);
+                continue;
+            }
+            cards.put(cardEntity.getNumber(), new CardConfig(cardEntity));
+        }
+
+        return cards;
+    }
+
+    private MqttConfig loadMqttConfig() {
+        return this.mqttSettingsRepository.findByName(MqttSettingsEntity.TABLE_NAME).map(MqttConfig::new).orElse(null);
+    }
+
+    private MqttTopicTrie<String> createTopicIndex(Map<Integer, CardConfig> cards) {
+        MqttTopicTrie.Builder<String> builder = MqttTopicTrie.newBuilder();
+        cards.values().forEach(card -> {
+            if (StringUtils.isNotBlank(card.getSubscriptionTopic())) {
+                builder.add(card.getSubscriptionTopic(), String.valueOf(card.getNumber()));
+            }
+        });
+
+        return builder.build();
+    }
+}
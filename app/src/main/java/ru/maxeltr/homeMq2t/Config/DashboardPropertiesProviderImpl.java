@@ -87,9 +87,32 @@ public class DashboardPropertiesProviderImpl implements DashboardPropertiesProvi
 
     }
 
+    /**
+     * Creates the start dashboard, which is the first dashboard of the card
+     * type. Other dashboards are not loaded.
+     *
+     * @return the start dashboard or empty if no dashboards are defined
+     */
     @Override
     public Optional<ViewModel<DashboardEntity>> getStartDashboard() {
-        return this.getCardDashboards().stream().findFirst();
+        String dashboardPathname = env.getProperty(DASHBOARD_TEMPLATE_PATH, "");
+        if (StringUtils.isEmpty(dashboardPathname)) {
+            logger.warn("No value defined for dashboard template pathname.");
+            return Optional.empty();
+        }
+
+        Optional<DashboardEntity<CardEntity>> dashboardEntityOpt = dashboardRepository.findFirstByType(DashboardType.CARD);
+        if (dashboardEntityOpt.isEmpty()) {
+            logger.warn("No start dashboard found.");
+            return Optional.empty();
+        }
+        DashboardEntity<CardEntity> dashboardEntity = dashboardEntityOpt.get();
+
+        List<ViewModel<CardEntity>> cards = getCardsFromDashboardEntity(dashboardEntity);
+        ViewModel<DashboardEntity> dashboard = new DashboardImpl(dashboardEntity, cards, dashboardPathname);
+        logger.debug("Start dashboard={} has been created.", dashboard.getName());
+
+        return Optional.of(dashboard);
     }
 
     /**
@@ -0,0 +1,175 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Config;
+
+import com.jayway.jsonpath.JsonPath;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JsonPath expression of a card compiled once, when the card settings are
+ * loaded or saved. A simple expression, that consists of field names and array
+ * indexes only (e.g. $.temp, $.sensors[0].value, $['a b']), is also split into
+ * steps, so that it may be read by a streaming parser.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public final class JsonPathExpression {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonPathExpression.class);
+
+    private final String expression;
+
+    private final JsonPath path;
+
+    private final List<Object> steps;
+
+    private JsonPathExpression(String expression, JsonPath path) {
+        this.expression = expression;
+        this.path = path;
+        this.steps = path != null ? parseSimple(expression) : null;
+    }
+
+    /**
+     * Compiles the space separated expressions.
+     *
+     * @param expressions the space separated jsonpath expressions
+     * @return the compiled expressions in the given order, an expression that
+     * could not be compiled has no path
+     */
+    public static List<JsonPathExpression> compileAll(String expressions) {
+        String[] parts = StringUtils.split(expressions, " ");
+        if (parts == null || parts.length == 0) {
+            return Collections.emptyList();
+        }
+        List<JsonPathExpression> result = new ArrayList<>(parts.length);
+        for (String part : parts) {
+            JsonPath path = null;
+            try {
+                path = JsonPath.compile(part);
+            } catch (RuntimeException ex) {
+                logger.warn("Could not compile jsonpath expression={}. {}", part, ex.getMessage());
+            }
+            result.add(new JsonPathExpression(part, path));
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the compiled path or null if the expression is not valid.
+     *
+     * @return the compiled path or null
+     */
+    public JsonPath getPath() {
+        return path;
+    }
+
+    /**
+     * Returns true if the expression consists of field names and array indexes
+     * only.
+     *
+     * @return true if the expression is simple
+     */
+    public boolean isSimple() {
+        return steps != null;
+    }
+
+    /**
+     * Returns the steps of a simple expression: String for a field name,
+     * Integer for an array index.
+     *
+     * @return the steps or null if the expression is not simple
+     */
+    public List<Object> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Splits the expression into field names and array indexes.
+     *
+     * @return the steps or null if the expression is not simple
+     */
+    private static List<Object> parseSimple(String expression) {
+        if (!expression.startsWith("$")) {
+            return null;
+        }
+        List<Object> result = new ArrayList<>();
+        int i = 1;
+        int length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            if (c == '.') {
+                int start = ++i;
+                while (i < length && isNameChar(expression.charAt(i))) {
+                    ++i;
+                }
+                if (i == start) {
+                    return null;    //deep scan, wildcard or function
+                }
+                result.add(expression.substring(start, i));
+            } else if (c == '[' && i + 1 < length) {
+                char first = expression.charAt(i + 1);
+                int close = expression.indexOf(']', i);
+                if (close < 0) {
+                    return null;
+                }
+                String inner = expression.substring(i + 1, close);
+                if ((first == '\'' || first == '"') && inner.length() >= 2 && inner.charAt(inner.length() - 1) == first) {
+                    String name = inner.substring(1, inner.length() - 1);
+                    if (name.isEmpty() || StringUtils.containsAny(name, '\'', '"', ',', '\\')) {
+                        return null;
+                    }
+                    result.add(name);
+                } else if (!inner.isEmpty() && inner.length() < 10 && StringUtils.isNumeric(inner)) {
+                    result.add(Integer.valueOf(inner));
+                } else {
+                    return null;    //filter, slice, wildcard or union
+                }
+                i = close + 1;
+            } else {
+                return null;
+            }
+        }
+
+        return result.isEmpty() ? null : Collections.unmodifiableList(result);
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -25,15 +25,21 @@ package ru.maxeltr.homeMq2t.Config;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
+import org.apache.commons.lang3.Strings;
 import org.springframework.http.MediaType;
 
 public enum MediaTypes {
     APPLICATION_JSON(MediaType.APPLICATION_JSON_VALUE),
     TEXT_PLAIN(MediaType.TEXT_PLAIN_VALUE),
+    IMAGE_JPEG("image/jpeg"),
     IMAGE_JPEG_BASE64("image/jpeg;base64"),
     TEXT_HTML_BASE64("text/html;base64");
 
+    private static final Set<String> RASTER_IMAGE_TYPES = Set.of("image/png", "image/jpeg", "image/gif", "image/webp");
+
     private final String value;
 
     MediaTypes(String value) {
@@ -44,6 +50,24 @@ public enum MediaTypes {
         return value;
     }
 
+    /**
+     * Checks whether the payload of the type is passed to the UI as raw bytes.
+     * These are raster image types without the base64 parameter. Other images,
+     * e.g. SVG that may carry scripts, are not served as documents.
+     *
+     * @param type the media type
+     * @return true if the payload is binary
+     */
+    public static boolean isBinary(String type) {
+        if (type == null || Strings.CI.contains(type, "base64")) {
+            return false;
+        }
+        int end = type.indexOf(';');
+        String mimeType = (end < 0 ? type : type.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+
+        return RASTER_IMAGE_TYPES.contains(mimeType);
+    }
+
     public static List<String> asStringList() {
         return Arrays.stream(values())
                 .map(MediaTypes::getValue)
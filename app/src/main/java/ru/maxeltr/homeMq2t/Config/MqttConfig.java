@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Config;
+
+import ru.maxeltr.homeMq2t.Entity.MqttSettingsEntity;
+
+/**
+ * Immutable copy of the MQTT connection settings. It is detached from the
+ * persistence context and may be shared between threads.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public final class MqttConfig {
+
+    private final String host;
+    private final String port;
+    private final String mq2tPassword;
+    private final String mq2tUsername;
+    private final String clientId;
+    private final Boolean hasUsername;
+    private final Boolean hasPassword;
+    private final String willQos;
+    private final Boolean willRetain;
+    private final Boolean willFlag;
+    private final Boolean cleanSession;
+    private final Boolean autoConnect;
+    private final String willTopic;
+    private final String willMessage;
+    private final Boolean reconnect;
+
+    public MqttConfig(MqttSettingsEntity entity) {
+        this.host = entity.getHost();
+        this.port = entity.getPort();
+        this.mq2tPassword = entity.getMq2tPassword();
+        this.mq2tUsername = entity.getMq2tUsername();
+        this.clientId = entity.getClientId();
+        this.hasUsername = entity.getHasUsername();
+        this.hasPassword = entity.getHasPassword();
+        this.willQos = entity.getWillQos();
+        this.willRetain = entity.getWillRetain();
+        this.willFlag = entity.getWillFlag();
+        this.cleanSession = entity.getCleanSession();
+        this.autoConnect = entity.getAutoConnect();
+        this.willTopic = entity.getWillTopic();
+        this.willMessage = entity.getWillMessage();
+        this.reconnect = entity.getReconnect();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    public String getMq2tPassword() {
+        return mq2tPassword;
+    }
+
+    public String getMq2tUsername() {
+        return mq2tUsername;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public Boolean getHasUsername() {
+        return hasUsername;
+    }
+
+    public Boolean getHasPassword() {
+        return hasPassword;
+    }
+
+    public String getWillQos() {
+        return willQos;
+    }
+
+    public Boolean getWillRetain() {
+        return willRetain;
+    }
+
+    public Boolean getWillFlag() {
+        return willFlag;
+    }
+
+    public Boolean getCleanSession() {
+        return cleanSession;
+    }
+
+    public Boolean getAutoConnect() {
+        return autoConnect;
+    }
+
+    public String getWillTopic() {
+        return willTopic;
+    }
+
+    public String getWillMessage() {
+        return willMessage;
+    }
+
+    public Boolean getReconnect() {
+        return reconnect;
+    }
+
+    @Override
+    public String toString() {
+        return "MqttConfig{" + "host=" + host + ", port=" + port + ", clientId=" + clientId + ", cleanSession=" + cleanSession + ", autoConnect=" + autoConnect + ", reconnect=" + reconnect + '}';
+    }
+}
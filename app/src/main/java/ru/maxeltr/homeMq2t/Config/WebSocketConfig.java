@@ -28,13 +28,16 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerFactory;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import ru.maxeltr.homeMq2t.Controller.SlowConsumerGuard;
 
 /**
  *
@@ -52,15 +55,47 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer, WebSer
     @Qualifier("mq2tTaskScheduler")
     ThreadPoolTaskScheduler threadPoolTaskScheduler;
 
+    @Autowired
+    SlowConsumerGuard slowConsumerGuard;
+
     @Value("${local-server-port:8028}")
     private int port;
 
+    @Value("${ws-send-time-limit:10000}")
+    private int sendTimeLimit;
+
+    @Value("${ws-send-buffer-size-limit:1048576}")
+    private int sendBufferSizeLimit;
+
+    @Value("${ws-outbound-threads:4}")
+    private int outboundThreads;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic").setHeartbeatValue(new long[]{20_000, 0}).setTaskScheduler(threadPoolTaskScheduler);
         config.setApplicationDestinationPrefixes("/app");
     }
 
+    /**
+     * Sessions send through bounded queues of the slow consumer guard, the
+     * limits of the session decorator of Spring are kept as the outer bound.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimit)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .addDecoratorFactory(slowConsumerGuard::decorate);
+    }
+
+    /**
+     * Threads of the outbound channel only put frames to the session queues,
+     * so a small dedicated pool is enough.
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(outboundThreads).maxPoolSize(outboundThreads);
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/mq2tClientDashboard").withSockJS();
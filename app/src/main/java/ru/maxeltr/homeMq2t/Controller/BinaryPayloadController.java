@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Controller;
+
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import ru.maxeltr.homeMq2t.Config.MediaTypes;
+import ru.maxeltr.homeMq2t.Service.UI.BinaryPayloadStore;
+import ru.maxeltr.homeMq2t.Service.UI.BinaryPayloadStore.BinaryPayload;
+
+/**
+ * Serves the latest raw payload of cards in binary mode. The response carries
+ * the version of the payload as ETag, so a browser that already has the
+ * payload gets 304. The payload comes from MQTT publishers, so only raster
+ * images are served with their own type, the browser must not sniff it and
+ * the response is sandboxed.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+@Controller
+public class BinaryPayloadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryPayloadController.class);
+
+    @Autowired
+    private BinaryPayloadStore binaryPayloadStore;
+
+    @GetMapping("/card/{number}/payload")
+    public ResponseEntity<byte[]> getPayload(@PathVariable String number, @RequestHeader(name = "If-None-Match", required = false) String ifNoneMatch) {
+        BinaryPayload payload = this.binaryPayloadStore.get(number).orElse(null);
+        if (payload == null) {
+            logger.debug("There is no binary payload for card={}.", number);
+            return ResponseEntity.notFound().build();
+        }
+
+        CacheControl cacheControl = CacheControl.maxAge(0, TimeUnit.SECONDS).cachePrivate().mustRevalidate();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Content-Type-Options", "nosniff");
+        headers.set("Content-Security-Policy", "sandbox");
+        if (payload.getETag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).eTag(payload.getETag()).cacheControl(cacheControl).build();
+        }
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .eTag(payload.getETag())
+                .cacheControl(cacheControl)
+                .contentType(this.getContentType(payload))
+                .body(payload.bytes());
+    }
+
+    private MediaType getContentType(BinaryPayload payload) {
+        if (!MediaTypes.isBinary(payload.type())) {
+            logger.warn("Binary payload of type={} is not a raster image. It is served as octet stream.", payload.type());
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(payload.type());
+        } catch (InvalidMediaTypeException ex) {
+            logger.warn("Invalid media type={} of binary payload. {}", payload.type(), ex.getMessage());
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Controller;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import ru.maxeltr.homeMq2t.Model.Msg;
+import ru.maxeltr.homeMq2t.Service.UI.LastValueCache.CardValue;
+
+/**
+ * Collects card updates per destination during ui-batch-window milliseconds
+ * and sends them as one frame with an array of card values. The first update
+ * of a window schedules the flush, a newer update of the same card within the
+ * window replaces the older one. A window of 0 sends each update at once.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class CardUpdateBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardUpdateBatcher.class);
+
+    @Autowired
+    private SimpMessagingTemplate simpMessagingTemplate;
+
+    @Value("${ui-batch-window:25}")
+    private long window;
+
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void postConstruct() {
+        this.executor = new ScheduledThreadPoolExecutor(1, new DefaultThreadFactory("Mq2tUIBatch", true));
+        logger.info("Card update batcher has been started. Window={} ms.", this.window);
+    }
+
+    /**
+     * Adds the update of the card to the batch of the destination.
+     *
+     * @param destination the destination of the batch
+     * @param cardNumber the number of the card
+     * @param msg the message to display
+     */
+    public void add(String destination, String cardNumber, Msg msg) {
+        if (this.window <= 0) {
+            this.send(destination, List.of(new CardValue(cardNumber, msg)));
+            return;
+        }
+
+        Batch batch = this.batches.computeIfAbsent(destination, Batch::new);
+        boolean schedule;
+        synchronized (batch) {
+            batch.updates.put(cardNumber, msg);
+            schedule = !batch.scheduled;
+            batch.scheduled = true;
+        }
+
+        if (schedule) {
+            try {
+                this.executor.schedule(() -> this.flush(batch), this.window, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                logger.debug("Batch of destination={} could not be scheduled. It is sent at once.", destination);
+                this.flush(batch);
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+        logger.info("Card update batcher has been stopped.");
+    }
+
+    private void flush(Batch batch) {
+        List<CardValue> values;
+        synchronized (batch) {
+            values = new ArrayList<>(batch.updates.size());
+            for (Map.Entry<String, Msg> update : batch.updates.entrySet()) {
+                values.add(new CardValue(update.getKey(), update.getValue()));
+            }
+            batch.updates.clear();
+            batch.scheduled = false;
+        }
+
+        if (!values.isEmpty()) {
+            this.send(batch.destination, values);
+        }
+    }
+
+    private void send(String destination, List<CardValue> values) {
+        try {
+            this.simpMessagingTemplate.convertAndSend(destination, values);
+            logger.debug("Batch was sent. Destination={}. Amount of cards={}.", destination, values.size());
+        } catch (RuntimeException ex) {
+            logger.warn("Could not send batch to destination={}. {}", destination, ex.getMessage());
+        }
+    }
+
+    private static final class Batch {
+
+        private final String destination;
+
+        private final Map<String, Msg> updates = new LinkedHashMap<>();
+
+        private boolean scheduled;
+
+        Batch(String destination) {
+            this.destination = destination;
+        }
+    }
+}
@@ -24,12 +24,16 @@
 package ru.maxeltr.homeMq2t.Controller;
 
 import io.netty.handler.codec.mqtt.MqttQoS;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 import ru.maxeltr.homeMq2t.Model.Msg;
+import ru.maxeltr.homeMq2t.Service.UI.LastValueCache;
 import ru.maxeltr.homeMq2t.Service.UI.UIService;
 import io.netty.handler.codec.mqtt.MqttReasonCodeAndPropertiesVariableHeader;
 
@@ -114,4 +118,17 @@ public class InputUIControllerImpl implements InputUIController {
         logger.debug("Do display cards. {}", msg.getData());
         uiService.displayCardDashboard(msg.build());
     }
+
+    /**
+     * Returns the last values of the cards of the dashboard. The reply is sent
+     * to the subscribing session only, in one frame.
+     *
+     * @param number the number of the dashboard
+     * @return the last values of the cards
+     */
+    @SubscribeMapping("/dashboard/{number}/snapshot")
+    public List<LastValueCache.CardValue> getDashboardSnapshot(@DestinationVariable String number) {
+        logger.debug("Do get snapshot of dashboard={}.", number);
+        return uiService.getDashboardSnapshot(number);
+    }
 }
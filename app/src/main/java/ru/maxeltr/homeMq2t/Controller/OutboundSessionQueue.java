@@ -0,0 +1,393 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+/**
+ * Bounded outbound queue of one WebSocket session. Sending only adds the frame
+ * to the queue, the queue is drained by one sender task at a time. The limits
+ * and the policy are taken from the {@link SlowConsumerGuard}.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+class OutboundSessionQueue extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundSessionQueue.class);
+
+    private static final StompDecoder decoder = new StompDecoder();
+
+    private static final StompEncoder encoder = new StompEncoder();
+
+    private final SlowConsumerGuard guard;
+
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+
+    private long queuedBytes;
+
+    private boolean draining;
+
+    private boolean closed;
+
+    private volatile boolean sending;
+
+    private volatile long sendStart;
+
+    private volatile long sent;
+
+    private volatile long dropped;
+
+    private volatile long conflated;
+
+    OutboundSessionQueue(WebSocketSession session, SlowConsumerGuard guard) {
+        super(session);
+        this.guard = guard;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (this.sending && System.nanoTime() - this.sendStart > this.guard.getSendTimeLimitNanos()) {
+            this.disconnect("Send time limit has been exceeded.");
+            return;
+        }
+
+        boolean schedule;
+        boolean overflow = false;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            Frame frame = new Frame(message);
+            this.queue.add(frame);
+            this.queuedBytes += frame.length;
+            if (this.isOverflowed()) {
+                overflow = !this.handleOverflow();
+            }
+            schedule = !this.draining && !overflow;
+            this.draining |= schedule;
+        }
+
+        if (overflow) {
+            this.disconnect("Outbound queue is full.");
+        } else if (schedule) {
+            this.guard.execute(this::drain);
+        }
+    }
+
+    /**
+     * Discards the queued frames. No frames are accepted after that.
+     */
+    synchronized void clear() {
+        this.closed = true;
+        this.queue.clear();
+        this.queuedBytes = 0;
+    }
+
+    /**
+     * Returns the age of the oldest queued frame.
+     *
+     * @return the age in ms, 0 if the queue is empty
+     */
+    long getLag() {
+        Frame head;
+        synchronized (this) {
+            head = this.queue.peek();
+        }
+        return head == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - head.enqueued);
+    }
+
+    String getLagDescription() {
+        int messages;
+        long bytes;
+        synchronized (this) {
+            messages = this.queue.size();
+            bytes = this.queuedBytes;
+        }
+        return String.format("id=%s, queued=%d, bytes=%d, lag=%d ms, sent=%d, dropped=%d, conflated=%d",
+                this.getId(), messages, bytes, this.getLag(), this.sent, this.dropped, this.conflated);
+    }
+
+    private void drain() {
+        for (;;) {
+            Frame frame;
+            synchronized (this) {
+                frame = this.queue.poll();
+                if (frame == null || this.closed) {
+                    this.draining = false;
+                    return;
+                }
+                this.queuedBytes -= frame.length;
+            }
+
+            this.sendStart = System.nanoTime();
+            this.sending = true;
+            try {
+                this.getDelegate().sendMessage(frame.message);
+                this.sent++;
+            } catch (IOException | RuntimeException ex) {
+                synchronized (this) {
+                    this.draining = false;
+                }
+                this.disconnect("Could not send frame. " + ex.getMessage());
+                return;
+            } finally {
+                this.sending = false;
+            }
+        }
+    }
+
+    private void disconnect(String reason) {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.clear();
+        }
+        this.guard.onDisconnected();
+        logger.warn("Session={} is closed as slow. {}", this.getId(), reason);
+
+        //closing may block on a stuck connection as well
+        this.guard.execute(() -> {
+            try {
+                this.getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException | RuntimeException ex) {
+                logger.debug("Could not close session={}. {}", this.getId(), ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * A single frame is never an overflow, however large it is.
+     */
+    private boolean isOverflowed() {
+        return this.queue.size() > 1
+                && (this.queue.size() > this.guard.getMaxMessages() || this.queuedBytes > this.guard.getMaxBytes());
+    }
+
+    /**
+     * Applies the policy to the overflowed queue.
+     *
+     * @return false if the session has to be closed
+     */
+    private boolean handleOverflow() {
+        switch (this.guard.getPolicy()) {
+            case DISCONNECT:
+                return false;
+            case CONFLATE:
+                this.conflate();
+                if (!this.isOverflowed()) {
+                    return true;
+                }
+                this.dropOldest();
+                return true;
+            default:
+                this.dropOldest();
+                return true;
+        }
+    }
+
+    /**
+     * Merges the messages of each subscription into the newest one. Card
+     * batches keep the newest value of each card, other messages are
+     * replaced.
+     */
+    private void conflate() {
+        List<Frame> frames = new ArrayList<>(this.queue.size());
+        Map<String, Integer> positions = new HashMap<>();
+        int merged = 0;
+        for (Frame frame : this.queue) {
+            String key = frame.getKey();
+            Integer position = key == null ? null : positions.get(key);
+            if (position != null) {
+                Frame older = frames.set(position, null);
+                frame = this.merge(older, frame);
+                merged++;
+            }
+            frames.add(frame);
+            if (key != null) {
+                positions.put(key, frames.size() - 1);
+            }
+        }
+
+        if (merged == 0) {
+            return;
+        }
+
+        this.queue.clear();
+        this.queuedBytes = 0;
+        for (Frame frame : frames) {
+            if (frame != null) {
+                this.queue.add(frame);
+                this.queuedBytes += frame.length;
+            }
+        }
+        this.conflated += merged;
+        this.guard.onConflated(merged);
+        logger.debug("Messages of session={} have been conflated. Amount={}.", this.getId(), merged);
+    }
+
+    private Frame merge(Frame older, Frame newer) {
+        String destination = newer.getDestination();
+        if (destination == null || !destination.startsWith("/topic/dashboard/") || !destination.endsWith("/cards")) {
+            return newer.since(older.enqueued);
+        }
+
+        try {
+            Map<String, JsonNode> values = new LinkedHashMap<>();
+            for (Frame frame : List.of(older, newer)) {
+                for (JsonNode value : this.guard.getMapper().readTree(frame.getBody())) {
+                    String card = value.path("card").asText();
+                    values.remove(card);
+                    values.put(card, value);
+                }
+            }
+            ArrayNode array = this.guard.getMapper().createArrayNode().addAll(values.values());
+            byte[] payload = this.guard.getMapper().writeValueAsBytes(array);
+            Message<byte[]> message = MessageBuilder.createMessage(payload, newer.getAccessor().getMessageHeaders());
+            return new Frame(new TextMessage(encoder.encode(message)), older.enqueued);
+        } catch (IOException | RuntimeException ex) {
+            logger.debug("Could not merge card batches of session={}. {}", this.getId(), ex.getMessage());
+            return newer.since(older.enqueued);
+        }
+    }
+
+    /**
+     * Drops the oldest messages until the queue fits the limits. The newest
+     * message and frames other than messages and heartbeats are kept.
+     */
+    private void dropOldest() {
+        int amount = 0;
+        Iterator<Frame> it = this.queue.iterator();
+        while (this.isOverflowed() && it.hasNext()) {
+            Frame frame = it.next();
+            if (frame != this.queue.peekLast() && frame.isDroppable()) {
+                it.remove();
+                this.queuedBytes -= frame.length;
+                amount++;
+            }
+        }
+
+        if (amount > 0) {
+            this.dropped += amount;
+            this.guard.onDropped(amount);
+            logger.debug("Messages of session={} have been dropped. Amount={}.", this.getId(), amount);
+        }
+    }
+
+    private static final class Frame {
+
+        private final WebSocketMessage<?> message;
+
+        private final int length;
+
+        private final long enqueued;
+
+        private Message<byte[]> decoded;
+
+        private boolean parsed;
+
+        Frame(WebSocketMessage<?> message) {
+            this(message, System.nanoTime());
+        }
+
+        Frame(WebSocketMessage<?> message, long enqueued) {
+            this.message = message;
+            this.length = message.getPayloadLength();
+            this.enqueued = enqueued;
+        }
+
+        Frame since(long enqueued) {
+            Frame frame = new Frame(this.message, enqueued);
+            frame.decoded = this.decoded;
+            frame.parsed = this.parsed;
+            return frame;
+        }
+
+        /**
+         * Returns the subscription and the destination of a MESSAGE frame.
+         */
+        String getKey() {
+            StompHeaderAccessor accessor = this.getAccessor();
+            if (accessor == null || accessor.getCommand() != StompCommand.MESSAGE) {
+                return null;
+            }
+            return accessor.getSubscriptionId() + " " + accessor.getDestination();
+        }
+
+        String getDestination() {
+            StompHeaderAccessor accessor = this.getAccessor();
+            return accessor == null ? null : accessor.getDestination();
+        }
+
+        boolean isDroppable() {
+            StompHeaderAccessor accessor = this.getAccessor();
+            return accessor != null
+                    && (accessor.getCommand() == StompCommand.MESSAGE || accessor.getMessageType() == SimpMessageType.HEARTBEAT);
+        }
+
+        byte[] getBody() {
+            return this.getAccessor() == null ? null : this.decoded.getPayload();
+        }
+
+        private StompHeaderAccessor getAccessor() {
+            if (!this.parsed) {
+                this.parsed = true;
+                if (this.message instanceof TextMessage textMessage) {
+                    try {
+                        List<Message<byte[]>> messages = decoder.decode(ByteBuffer.wrap(textMessage.asBytes()));
+                        this.decoded = messages.size() == 1 ? messages.get(0) : null;
+                    } catch (RuntimeException ex) {
+                        logger.debug("Could not decode frame. {}", ex.getMessage());
+                    }
+                }
+            }
+            return this.decoded == null ? null : StompHeaderAccessor.wrap(this.decoded);
+        }
+    }
+}
@@ -24,29 +24,65 @@
 package ru.maxeltr.homeMq2t.Controller;
 
 import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
+import ru.maxeltr.homeMq2t.Config.CardPropertiesProvider;
 import ru.maxeltr.homeMq2t.Model.Msg;
 
 /**
+ * Sends messages to the browsers. Views of the whole dashboard area are sent
+ * to the common destination, card updates are batched and sent to the
+ * destination of the dashboard, so a browser receives only the cards of the
+ * dashboard it shows.
  *
  * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
  */
 @Controller
 public class OutputUIControllerImpl implements OutputUIController {
 
+    public static final String DASHBOARD_RECEIVER = "dashboard";
+
+    public static final String DATA_DESTINATION = "/topic/data";
+
+    /**
+     * Destination of batches of card updates, the argument is the dashboard
+     * number.
+     */
+    public static final String CARDS_DESTINATION = "/topic/dashboard/%s/cards";
+
     @Autowired
     private SimpMessagingTemplate simpMessagingTemplate;
 
+    @Autowired
+    private CardUpdateBatcher cardUpdateBatcher;
+
+    @Autowired
+    @Qualifier("getCardPropertiesProvider")
+    private CardPropertiesProvider cardPropertiesProvider;
+
     private static final Logger logger = LoggerFactory.getLogger(OutputUIControllerImpl.class);
 
     @Override
     public void display(Msg msg, String cardNumber) {
-        simpMessagingTemplate.convertAndSend("/topic/data", msg, Map.of("card", cardNumber));
-        logger.debug("Msg was sent to card {}. Message={}", cardNumber, msg);
+        if (DASHBOARD_RECEIVER.equals(cardNumber)) {
+            simpMessagingTemplate.convertAndSend(DATA_DESTINATION, msg, Map.of("card", cardNumber));
+            logger.debug("Msg was sent to {}. Message={}", DATA_DESTINATION, msg);
+            return;
+        }
+
+        String dashboardNumber = this.cardPropertiesProvider.getCardDashboardNumber(cardNumber);
+        if (StringUtils.isEmpty(dashboardNumber)) {
+            logger.debug("Card={} is not on any dashboard. Msg was not sent.", cardNumber);
+            return;
+        }
+        String destination = String.format(CARDS_DESTINATION, dashboardNumber);
+        this.cardUpdateBatcher.add(destination, cardNumber, msg);
+        logger.debug("Msg was added to batch of card {}. Destination={}. Message={}", cardNumber, destination, msg);
     }
 
 //    public void onConnect(Msg msg) {
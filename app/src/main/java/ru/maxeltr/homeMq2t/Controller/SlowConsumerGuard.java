@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+/**
+ * Protects the browsers from each other. Every WebSocket session gets a
+ * bounded outbound queue, see {@link OutboundSessionQueue}, so the threads of
+ * the client outbound channel never wait for a browser. Each queue is drained
+ * by its own sender task, a slow browser delays only its own frames.
+ * <p>
+ * When a queue exceeds ws-session-queue-messages or ws-session-queue-bytes the
+ * ws-slow-consumer-policy is applied to the session:
+ * <ul>
+ * <li>conflate - messages of the same subscription are merged, card batches
+ * keep the newest value of each card, then the oldest messages are
+ * dropped;</li>
+ * <li>drop - the oldest messages are dropped;</li>
+ * <li>disconnect - the session is closed.</li>
+ * </ul>
+ * A session is closed if sending one frame takes longer than
+ * ws-send-time-limit.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+@ManagedResource(objectName = "ru.maxeltr.homeMq2t:type=SlowConsumerGuard", description = "Outbound queues of the browser sessions")
+public class SlowConsumerGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowConsumerGuard.class);
+
+    public enum Policy {
+        CONFLATE, DROP, DISCONNECT
+    }
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Value("${ws-slow-consumer-policy:conflate}")
+    private String policyName;
+
+    @Value("${ws-session-queue-messages:256}")
+    private int maxMessages;
+
+    @Value("${ws-session-queue-bytes:1048576}")
+    private long maxBytes;
+
+    @Value("${ws-send-time-limit:10000}")
+    private long sendTimeLimit;
+
+    private Policy policy;
+
+    private final ConcurrentMap<String, OutboundSessionQueue> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    private final AtomicLong conflatedMessages = new AtomicLong();
+
+    private final AtomicLong disconnectedSessions = new AtomicLong();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void postConstruct() {
+        try {
+            this.policy = Policy.valueOf(this.policyName.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            this.policy = Policy.CONFLATE;
+            logger.warn("Unknown slow consumer policy={}. Policy={} is used.", this.policyName, this.policy);
+        }
+        this.executor = Executors.newCachedThreadPool(new DefaultThreadFactory("Mq2tWsSend", true));
+        logger.info("Slow consumer guard has been started. Policy={}, max messages={}, max bytes={}, send time limit={} ms.",
+                this.policy, this.maxMessages, this.maxBytes, this.sendTimeLimit);
+    }
+
+    /**
+     * Decorates the handler, so the sessions passed to it send through the
+     * bounded outbound queues.
+     *
+     * @param handler the handler to decorate
+     * @return the decorated handler
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                OutboundSessionQueue queue = new OutboundSessionQueue(session, SlowConsumerGuard.this);
+                sessions.put(session.getId(), queue);
+                super.afterConnectionEstablished(queue);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                super.handleMessage(getSession(session), message);
+            }
+
+            @Override
+            public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+                super.handleTransportError(getSession(session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                OutboundSessionQueue queue = sessions.remove(session.getId());
+                if (queue != null) {
+                    queue.clear();
+                }
+                super.afterConnectionClosed(queue != null ? queue : session, closeStatus);
+            }
+        };
+    }
+
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+        logger.info("Slow consumer guard has been stopped.");
+    }
+
+    private WebSocketSession getSession(WebSocketSession session) {
+        OutboundSessionQueue queue = this.sessions.get(session.getId());
+        return queue != null ? queue : session;
+    }
+
+    void execute(Runnable task) {
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            logger.debug("Sender task has been rejected. {}", ex.getMessage());
+        }
+    }
+
+    Policy getPolicy() {
+        return this.policy;
+    }
+
+    int getMaxMessages() {
+        return this.maxMessages;
+    }
+
+    long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    long getSendTimeLimitNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(this.sendTimeLimit);
+    }
+
+    ObjectMapper getMapper() {
+        return this.mapper;
+    }
+
+    void onDropped(int amount) {
+        this.droppedMessages.addAndGet(amount);
+    }
+
+    void onConflated(int amount) {
+        this.conflatedMessages.addAndGet(amount);
+    }
+
+    void onDisconnected() {
+        this.disconnectedSessions.incrementAndGet();
+    }
+
+    @ManagedAttribute(description = "Amount of open browser sessions")
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    @ManagedAttribute(description = "Lag of each session: queued messages, queued bytes, age of the oldest queued message")
+    public String[] getSessionLag() {
+        return this.sessions.values().stream()
+                .map(OutboundSessionQueue::getLagDescription)
+                .toArray(String[]::new);
+    }
+
+    @ManagedAttribute(description = "Age of the oldest queued message over all sessions in ms")
+    public long getMaxLag() {
+        return this.sessions.values().stream()
+                .mapToLong(OutboundSessionQueue::getLag)
+                .max()
+                .orElse(0);
+    }
+
+    @ManagedAttribute(description = "Amount of messages dropped for slow sessions")
+    public long getDroppedMessages() {
+        return this.droppedMessages.get();
+    }
+
+    @ManagedAttribute(description = "Amount of messages merged into newer ones for slow sessions")
+    public long getConflatedMessages() {
+        return this.conflatedMessages.get();
+    }
+
+    @ManagedAttribute(description = "Amount of sessions closed as slow")
+    public long getDisconnectedSessions() {
+        return this.disconnectedSessions.get();
+    }
+}
@@ -58,9 +58,11 @@ public class DashboardImpl extends ViewModel<DashboardEntity> implements Dashboa
         Element el = document.getElementById(CARD_ELEMENT_ID);
         if (el != null) {
             for (ViewModel<?> card : this.getItems()) {
-                el.append(card.getHtml());
+                //move the nodes of the card view instead of parsing its html again
+                el.appendChildren(card.getView().body().childNodes());
             }
             el.attr("data-dashboardName", getName());
+            el.attr("data-dashboard-number", getNumber());
         } else {
             logger.warn("Element with id={} not found in the document.", CARD_ELEMENT_ID);
         }
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The bytes of a json string value (without quotes) or of a plain text, that
+ * are decoded to a String on the first request only. The decoded value is
+ * kept, so the messages built from the same builder decode it once.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+final class LazyJsonString {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final byte[] bytes;
+
+    private final boolean escaped;
+
+    private volatile String value;
+
+    /**
+     * @param bytes the utf-8 bytes
+     * @param escaped true if the bytes are the content of a json string that
+     * contains escape sequences
+     */
+    LazyJsonString(byte[] bytes, boolean escaped) {
+        this.bytes = bytes;
+        this.escaped = escaped;
+    }
+
+    String get() {
+        String result = this.value;
+        if (result == null) {
+            result = this.escaped ? this.unescape() : new String(this.bytes, StandardCharsets.UTF_8);
+            this.value = result;
+        }
+
+        return result;
+    }
+
+    int length() {
+        String result = this.value;
+        return result != null ? result.length() : this.bytes.length;
+    }
+
+    /**
+     * Returns the beginning of the value for logging without decoding the
+     * whole value.
+     */
+    String head(int maxChars) {
+        String result = this.value;
+        if (result != null) {
+            return result.length() > maxChars ? result.substring(0, maxChars) : result;
+        }
+
+        return new String(this.bytes, 0, Math.min(maxChars, this.bytes.length), StandardCharsets.UTF_8);
+    }
+
+    private String unescape() {
+        byte[] quoted = new byte[this.bytes.length + 2];
+        quoted[0] = '"';
+        System.arraycopy(this.bytes, 0, quoted, 1, this.bytes.length);
+        quoted[quoted.length - 1] = '"';
+        try (JsonParser parser = JSON_FACTORY.createParser(quoted)) {
+            parser.nextToken();
+            return parser.getText();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not decode json string.", ex);
+        }
+    }
+}
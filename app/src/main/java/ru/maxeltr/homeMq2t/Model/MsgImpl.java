@@ -36,6 +36,8 @@ public class MsgImpl implements Msg {
 
     private final String data;
 
+    private final LazyJsonString lazyData;
+
     private final String type;
 
     private final String timestamp;
@@ -43,6 +45,7 @@ public class MsgImpl implements Msg {
     private MsgImpl(MsgBuilder builder) {
         this.id = Objects.requireNonNullElse(builder.id, "");
         this.data = Objects.requireNonNullElse(builder.data, "");
+        this.lazyData = builder.lazyData;
         this.type = Objects.requireNonNullElse(builder.type, "");
         this.timestamp = Objects.requireNonNullElse(builder.timestamp, "");
     }
@@ -54,7 +57,7 @@ public class MsgImpl implements Msg {
 
     @Override
     public String getData() {
-        return this.data;
+        return this.lazyData != null ? this.lazyData.get() : this.data;
     }
 
     @Override
@@ -69,11 +72,12 @@ public class MsgImpl implements Msg {
 
     @Override
     public Msg.Builder toBuilder() {
-        return newBuilder()
+        MsgBuilder builder = new MsgBuilder()
                 .id(this.id)
-                .data(this.data)
                 .type(this.type)
                 .timestamp(this.timestamp);
+
+        return this.lazyData != null ? builder.data(this.lazyData) : builder.data(this.data);
     }
 
     public static Msg.Builder newBuilder() {
@@ -88,17 +92,26 @@ public class MsgImpl implements Msg {
                 .append(", type=").append(this.type)
                 .append(", timestamp=").append(this.timestamp)
                 .append(", data=");
-        if (this.data.length() > MAX_CHAR_TO_PRINT) {
-            sb.append(this.data.substring(0, MAX_CHAR_TO_PRINT));
-            sb.append("...");
-        } else {
-            sb.append(this.data);
-        }
+        appendData(sb, this.data, this.lazyData);
         sb.append("}");
 
         return sb.toString();
     }
 
+    private static void appendData(StringBuilder sb, String data, LazyJsonString lazyData) {
+        if (lazyData != null) {
+            sb.append(lazyData.head(MAX_CHAR_TO_PRINT));
+            if (lazyData.length() > MAX_CHAR_TO_PRINT) {
+                sb.append("...");
+            }
+        } else if (data.length() > MAX_CHAR_TO_PRINT) {
+            sb.append(data.substring(0, MAX_CHAR_TO_PRINT));
+            sb.append("...");
+        } else {
+            sb.append(data);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) {
@@ -114,7 +127,7 @@ public class MsgImpl implements Msg {
         return this.id.equals(that.id)
                 && this.type.equals(that.type)
                 && this.timestamp.equals(that.timestamp)
-                && this.data.equals(that.data);
+                && this.getData().equals(that.getData());
     }
 
     @Override
@@ -122,7 +135,7 @@ public class MsgImpl implements Msg {
         int result = this.id.hashCode();
         result = 31 * result + this.type.hashCode();
         result = 31 * result + this.timestamp.hashCode();
-        result = 31 * result + this.data.hashCode();
+        result = 31 * result + this.getData().hashCode();
 
         return result;
     }
@@ -141,6 +154,8 @@ public class MsgImpl implements Msg {
         @JsonProperty("timestamp")
         protected String timestamp = "";
 
+        private LazyJsonString lazyData;
+
         public MsgBuilder() {
 
         }
@@ -156,7 +171,7 @@ public class MsgImpl implements Msg {
 
         @Override
         public String getData() {
-            return data;
+            return this.lazyData != null ? this.lazyData.get() : data;
         }
 
         @Override
@@ -178,6 +193,16 @@ public class MsgImpl implements Msg {
         @Override
         public MsgBuilder data(String data) {
             this.data = Objects.requireNonNullElse(data, "");
+            this.lazyData = null;
+            return this;
+        }
+
+        /**
+         * Sets the data that is decoded when it is requested first.
+         */
+        MsgBuilder data(LazyJsonString data) {
+            this.data = "";
+            this.lazyData = data;
             return this;
         }
 
@@ -206,12 +231,7 @@ public class MsgImpl implements Msg {
                     .append(", type=").append(this.type)
                     .append(", timestamp=").append(this.timestamp)
                     .append(", data=");
-            if (this.data.length() > MAX_CHAR_TO_PRINT) {
-                sb.append(this.data.substring(0, MAX_CHAR_TO_PRINT));
-                sb.append("...");
-            } else {
-                sb.append(this.data);
-            }
+            appendData(sb, this.data, this.lazyData);
             sb.append("}");
 
             return sb.toString();
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.util.ByteProcessor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the json envelope of a message (id, data, type, timestamp) directly
+ * from the buffer with a streaming parser. The buffer is not copied to a
+ * String. The data value is not decoded by the parser: only its bytes are
+ * copied, and they are decoded to a String when a consumer asks for the data.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public final class MsgJsonDecoder {
+
+    private final JsonFactory jsonFactory;
+
+    public MsgJsonDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Decodes the readable bytes of the buffer. The reader index of the buffer
+     * is not changed.
+     *
+     * @param buf the buffer with the json envelope
+     * @return the builder of the message
+     * @throws IOException if the buffer does not contain a valid envelope
+     */
+    public Msg.Builder decode(ByteBuf buf) throws IOException {
+        MsgImpl.MsgBuilder builder = new MsgImpl.MsgBuilder();
+        try (JsonParser parser = this.jsonFactory.createParser((InputStream) new ByteBufInputStream(buf.duplicate()))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Msg must be a json object.");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "id" ->
+                        builder.id(this.readScalar(parser, value, name));
+                    case "type" ->
+                        builder.type(this.readScalar(parser, value, name));
+                    case "timestamp" ->
+                        builder.timestamp(this.readScalar(parser, value, name));
+                    case "data" -> {
+                        if (value == JsonToken.VALUE_STRING) {
+                            builder.data(this.sliceString(buf, parser));
+                        } else {
+                            builder.data(this.readScalar(parser, value, name));
+                        }
+                    }
+                    default ->
+                        throw new JsonParseException(parser, "Unrecognized field=" + name + ".");
+                }
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "Unexpected token=" + token + ".");
+            }
+        }
+
+        return builder;
+    }
+
+    /**
+     * Returns the readable bytes of the buffer as a plain text data, that is
+     * decoded on the first request.
+     *
+     * @param buf the buffer
+     * @return the builder of the message with the data
+     */
+    public Msg.Builder plainText(ByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), bytes);
+
+        return new MsgImpl.MsgBuilder().data(new LazyJsonString(bytes, false));
+    }
+
+    private String readScalar(JsonParser parser, JsonToken value, String name) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!value.isScalarValue()) {
+            throw new JsonParseException(parser, "Field=" + name + " must be a scalar value.");
+        }
+
+        return parser.getValueAsString();
+    }
+
+    /**
+     * Copies the content of the current string token from the buffer without
+     * decoding it. The parser skips the string when it is asked for the next
+     * token.
+     */
+    private LazyJsonString sliceString(ByteBuf buf, JsonParser parser) throws IOException {
+        long offset = parser.currentTokenLocation().getByteOffset();
+        int start = buf.readerIndex() + (int) offset;
+        if (offset < 0 || start >= buf.writerIndex() || buf.getByte(start) != '"') {
+            //location is not available, let the parser decode the value
+            String text = parser.getText();
+            return new LazyJsonString(text.getBytes(StandardCharsets.UTF_8), false);
+        }
+
+        StringEndFinder finder = new StringEndFinder();
+        int end = buf.forEachByte(start + 1, buf.writerIndex() - start - 1, finder);
+        if (end < 0) {
+            throw new JsonParseException(parser, "Unterminated string.");
+        }
+        byte[] bytes = new byte[end - start - 1];
+        buf.getBytes(start + 1, bytes);
+
+        return new LazyJsonString(bytes, finder.escaped);
+    }
+
+    /**
+     * Stops on the closing quote of a json string.
+     */
+    private static final class StringEndFinder implements ByteProcessor {
+
+        private boolean escaped;
+
+        private boolean backslash;
+
+        @Override
+        public boolean process(byte value) {
+            if (this.backslash) {
+                this.backslash = false;
+                return true;
+            }
+            if (value == '\\') {
+                this.escaped = true;
+                this.backslash = true;
+                return true;
+            }
+
+            return value != '"';
+        }
+    }
+}
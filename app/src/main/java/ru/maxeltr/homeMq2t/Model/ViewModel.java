@@ -23,17 +23,12 @@
  */
 package ru.maxeltr.homeMq2t.Model;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.Objects;
 import java.util.Optional;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
 
 import ru.maxeltr.homeMq2t.Entity.BaseEntity;
 import ru.maxeltr.homeMq2t.Entity.CardEntity;
@@ -86,32 +81,13 @@ public abstract class ViewModel<T extends BaseEntity> {
         Document document;
 
         document = this.getTemplateFromFile()
-                .orElse(Jsoup.parse("<div style=\"color:red;\"><h3>Error</h3><h5>Cannot get card view template.</h5></div>"));
+                .orElseGet(() -> Jsoup.parse("<div style=\"color:red;\"><h3>Error</h3><h5>Cannot get card view template.</h5></div>"));
         this.configureTemplate(document);
 
         return document;
     }
 
     private Optional<Document> getTemplateFromFile() {
-        //String path = System.getProperty("user.dir") + this.getPathname();
-        //logger.info("Load template from={}", path);
-        Document doc = null;
-        //File initialFile = new File(path);
-
-        
-
-        // if (!initialFile.exists()) {
-        //     logger.error("Card template file not found: {}", initialFile.getAbsolutePath());
-        //     return Optional.empty();
-        // }
-
-        try (InputStream is = new ClassPathResource(this.getPathname()).getInputStream()) {
-        //try (InputStream is = new FileInputStream(initialFile)) {
-            doc = Jsoup.parse(is, "utf-8", "");
-        } catch (IOException ex) {
-            logger.error("Error reading or parsing card template.", ex);
-        }
-
-        return Optional.ofNullable(doc);
+        return ViewTemplateCache.get(this.getPathname());
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Cache of parsed view templates. A template is read from the classpath and
+ * parsed by Jsoup once, then every view gets a deep copy of the parsed
+ * document, which is much cheaper than parsing. When the template is a plain
+ * file (e.g. exploded classes while developing), its modification time is
+ * checked on each access and the template is parsed again after a change.
+ * Templates packed in a jar are never reloaded.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+final class ViewTemplateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ViewTemplateCache.class);
+
+    private static final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+
+    private ViewTemplateCache() {
+    }
+
+    /**
+     * Returns a copy of the parsed template that may be modified freely.
+     *
+     * @param pathname the classpath of the template
+     * @return a copy of the template or empty if the template could not be
+     * read
+     */
+    static Optional<Document> get(String pathname) {
+        Template template = templates.get(pathname);
+        if (template == null || template.isModified()) {
+            template = load(pathname);
+            if (template == null) {
+                return Optional.empty();
+            }
+            templates.put(pathname, template);
+        }
+
+        return Optional.of(template.document.clone());
+    }
+
+    private static Template load(String pathname) {
+        ClassPathResource resource = new ClassPathResource(pathname);
+        File file = null;
+        long lastModified = 0;
+        try {
+            if (resource.isFile()) {
+                file = resource.getFile();
+                lastModified = file.lastModified();
+            }
+        } catch (IOException ex) {
+            logger.debug("Template={} is not a file, it will not be reloaded.", pathname);
+        }
+
+        try (InputStream is = resource.getInputStream()) {
+            Document document = Jsoup.parse(is, "utf-8", "");
+            logger.info("Template={} has been parsed and cached.", pathname);
+            return new Template(document, file, lastModified);
+        } catch (IOException ex) {
+            logger.error("Error reading or parsing template={}.", pathname, ex);
+            return null;
+        }
+    }
+
+    private record Template(Document document, File file, long lastModified) {
+
+        boolean isModified() {
+            return this.file != null && this.file.lastModified() != this.lastModified;
+        }
+    }
+}
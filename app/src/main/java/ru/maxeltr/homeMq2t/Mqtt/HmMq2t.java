@@ -8,6 +8,7 @@ import io.netty.handler.codec.mqtt.MqttSubAckMessage;
 import io.netty.handler.codec.mqtt.MqttTopicSubscription;
 import io.netty.handler.codec.mqtt.MqttUnsubAckMessage;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import ru.maxeltr.homeMq2t.Service.ServiceMediator;
 
 /**
@@ -26,9 +27,11 @@ public interface HmMq2t {
 
     Promise<MqttUnsubAckMessage> unsubscribe(List<String> topics);
 
-    void publish(String topic, ByteBuf payload, MqttQoS qos, boolean retain);
+    CompletableFuture<Void> publish(String topic, ByteBuf payload, MqttQoS qos, boolean retain);
 
     void setMediator(ServiceMediator serviceMediator);
 
     boolean isConnected();
+
+    MqttConnectionState getState();
 }
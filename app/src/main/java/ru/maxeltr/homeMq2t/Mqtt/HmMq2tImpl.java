@@ -25,17 +25,19 @@ package ru.maxeltr.homeMq2t.Mqtt;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttSubAckMessage;
 import io.netty.handler.codec.mqtt.MqttUnsubAckMessage;
 import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.netty.util.concurrent.Promise;
+import jakarta.annotation.PostConstruct;
 import io.netty.handler.codec.mqtt.MqttTopicSubscription;
 import io.netty.handler.codec.mqtt.MqttMessageIdVariableHeader;
 import io.netty.handler.codec.mqtt.MqttQoS;
@@ -53,28 +55,41 @@ import io.netty.handler.codec.mqtt.MqttReasonCodeAndPropertiesVariableHeader;
 import io.netty.handler.codec.mqtt.MqttUnsubscribeMessage;
 import io.netty.handler.codec.mqtt.MqttUnsubscribePayload;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.PromiseNotifier;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.nio.channels.ClosedChannelException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import ru.maxeltr.homeMq2t.Service.ServiceMediator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.scheduling.support.PeriodicTrigger;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
 import ru.maxeltr.homeMq2t.Config.AppProperties;
 import ru.maxeltr.homeMq2t.Utils.AppUtils;
 
@@ -88,13 +103,10 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
 
     private EventLoopGroup workerGroup;
 
-    private Channel channel;
+    private volatile Channel channel;
 
     @Autowired
-    private ThreadPoolTaskScheduler threadPoolTaskScheduler;
-
-    @Autowired
-    private PeriodicTrigger retransmitPeriodicTrigger;
+    private Timer retransmitTimer;
 
     @Autowired
     private MqttAckMediator mqttAckMediator;
@@ -102,6 +114,19 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
     @Autowired
     private MqttChannelInitializer mqttChannelInitializer;
 
+    @Autowired
+    private MqttTransport mqttTransport;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MqttOutboundJournal journal;
+
+    @Autowired
+    @Qualifier("processExecutor")
+    private TaskExecutor taskExecutor;
+
     @Value("${connect-timeout:5000}")
     private Integer connectTimeout;
 
@@ -114,26 +139,86 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
     @Value("${reconnect-delay-max:1800000}")
     private int reconnectDelayMax;
 
+    @Value("${retransmit-delay:10000}")
+    private long retransmitDelay;
+
+    @Value("${retransmit-delay-max:60000}")
+    private long retransmitDelayMax;
+
+    @Value("${retransmit-max-attempts:0}")
+    private int retransmitMaxAttempts;
+
+    @Value("${retransmit-expiry:0}")
+    private long retransmitExpiry;
+
     @Autowired
     private AppProperties appProperties;
 
-    private final AtomicInteger nextMessageId = new AtomicInteger(1);
+    @Value("${packet-id-acquire-timeout:5000}")
+    private long packetIdAcquireTimeout;
+
+    private final MqttPacketIdAllocator packetIdAllocator = new MqttPacketIdAllocator();
+
+    @Value("${max-in-flight:100}")
+    private int maxInFlight;
+
+    @Value("${max-in-flight-bytes:8388608}")
+    private long maxInFlightBytes;
+
+    @Value("${in-flight-overflow-policy:BLOCK}")
+    private MqttOverflowPolicy inFlightOverflowPolicy;
+
+    @Value("${in-flight-block-timeout:5000}")
+    private long inFlightBlockTimeout;
+
+    /**
+     * Delay before the journal replay is retried after a message has been
+     * rejected, if no window slot has been freed meanwhile.
+     */
+    @Value("${journal-replay-retry-delay:1000}")
+    private long replayRetryDelay;
+
+    private MqttPublishWindow publishWindow;
 
     private final Map<String, MqttTopicSubscription> subscribedTopics = Collections.synchronizedMap(new LinkedHashMap<>());
 
-    private final static AtomicBoolean connecting = new AtomicBoolean();
+    private volatile MqttConnectionState state = MqttConnectionState.DISCONNECTED;
+
+    /**
+     * The connection state is changed on this executor only, so the fields
+     * below are not shared between threads. The channel is registered on it
+     * as well.
+     */
+    private EventLoop stateLoop;
+
+    private int reconnectAttempts = 0;
 
-    private final static AtomicBoolean connected = new AtomicBoolean();
+    private boolean reconnecting;
 
-    private final static AtomicBoolean reconnecting = new AtomicBoolean();
+    private ScheduledFuture<?> backoffFuture;
 
     private final AtomicLong writeFailureCount = new AtomicLong(0);
 
     private final AtomicInteger consecutiveWriteFailerCount = new AtomicInteger(0);
 
-    private static int reconnectAttempts = 0;
+    private final AtomicReferenceArray<Timeout> retransmitTimeouts = new AtomicReferenceArray<>(MqttPacketIdTable.MAX_PACKET_ID + 1);
+
+    private final AtomicLongArray journalSeqs = new AtomicLongArray(MqttPacketIdTable.MAX_PACKET_ID + 1);
+
+    private final Map<Long, CompletableFuture<Void>> journalCompletions = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    private volatile boolean replayStalled;
 
-    private ScheduledFuture<?> retransmitScheduledFuture;
+    @PostConstruct
+    public void init() {
+        this.workerGroup = this.mqttTransport.getEventLoopGroup();
+        this.stateLoop = this.workerGroup.next();
+        this.publishWindow = new MqttPublishWindow(this.maxInFlight, this.maxInFlightBytes, this.inFlightOverflowPolicy);
+        logger.info("In-flight window max messages={}, max bytes={}, overflow policy={}.", this.maxInFlight, this.maxInFlightBytes, this.inFlightOverflowPolicy);
+        this.restoreInFlight();
+    }
 
     @Override
     public void run(String... args) {
@@ -144,144 +229,286 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
         }
     }
 
+    /**
+     * Starts the connection attempt. The method does not wait for the
+     * connection, the returned future is completed when CONNACK has been
+     * received or the attempt has failed.
+     *
+     * @return the future of the connection attempt
+     */
     @Override
     public Promise<MqttConnAckMessage> connect() {
         logger.debug("Start connect method.");
-        if (connecting.get() || connected.get()) {
-            logger.warn("Connecting or connected already. connecting={}. connected={}. auhtFuture={}", connecting.get(), connected.get(), mqttAckMediator.getConnectFuture());
-            return mqttAckMediator.getConnectFuture();
-        }
-        connecting.set(true);
+        Promise<MqttConnAckMessage> promise = this.stateLoop.newPromise();
+        this.stateLoop.execute(() -> {
+            switch (this.state) {
+                case CONNECTING, CONNECTED -> {
+                    logger.warn("Connecting or connected already. state={}. auhtFuture={}", this.state, this.mqttAckMediator.getConnectFuture());
+                }
+                case BACKOFF -> {
+                    logger.info("Cancel reconnect delay. Connect immediately.");
+                    this.cancelBackoff();
+                    this.reconnecting = false;
+                    this.doConnect();
+                }
+                default -> {
+                    this.reconnecting = false;
+                    this.reconnectAttempts = 0;
+                    this.doConnect();
+                }
+            }
+            PromiseNotifier.cascade(this.mqttAckMediator.getConnectFuture(), promise);
+        });
+
+        return promise;
+    }
+
+    private void doConnect() {
+        this.transition(MqttConnectionState.CONNECTING);
         logger.info("Start connection attempt.");
-        workerGroup = new NioEventLoopGroup();
-        Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(workerGroup);
-        bootstrap.channel(NioSocketChannel.class);
+
+        Promise<MqttConnAckMessage> authFuture = this.stateLoop.newPromise();
+        this.mqttAckMediator.setConnectFuture(authFuture);
+
+        //the channel is registered on the state loop, so acknowledgements, retransmits and drops run on one thread
+        Bootstrap bootstrap = this.mqttTransport.newBootstrap().clone(this.stateLoop);
         bootstrap.handler(mqttChannelInitializer);
+        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, this.connectTimeout);
+        String host = this.appProperties.getHost();
+        int port = AppUtils.safeParseInt(this.appProperties.getPort()).orElse(1883);
+        logger.info("Connecting to {} via port {}.", host, port);
+        ChannelFuture channelFuture = bootstrap.connect(host, port);
+        Channel ch = channelFuture.channel();
+        this.channel = ch;
 
-        Promise<MqttConnAckMessage> authFuture = new DefaultPromise<>(workerGroup.next());
-        authFuture.addListener(f -> {
+        channelFuture.addListener((ChannelFutureListener) f -> {
             if (f.isSuccess()) {
-                connected.set(true);
-                logger.debug("Connection accepted. CONNACK message has been received {}.", ((MqttConnAckMessage) f.get()).variableHeader());
-                //perform post-connection operations here
-                //HmMq2tImpl.this.subscribe(appProperties.getAllSubscriptions());
-                reconnectAttempts = 0;
-                this.startRetransmitTask();
-            }
-            logger.debug("Connection attempt completed. authFuture isDone={}, isSuccess={}, isCancelled={}, future={}", f.isDone(), f.isSuccess(), f.isCancelled(), f);
-            connecting.set(false);
+                logger.info("Connected to {} via port {}. Waiting for ConnAckMessage.", host, port);
+            } else if (f.isCancelled()) {
+                authFuture.cancel(true);
+            } else {
+                authFuture.tryFailure(f.cause());
+            }
         });
-        mqttAckMediator.setConnectFuture(authFuture);
+        ch.closeFuture().addListener(f -> this.stateLoop.execute(() -> this.onChannelClosed(ch)));
 
-        bootstrap.remoteAddress(this.appProperties.getHost(), AppUtils.safeParseInt(this.appProperties.getPort()).orElse(1883));
-        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, this.connectTimeout);
-        ChannelFuture channelFuture = bootstrap.connect();
-        channelFuture.addListener((ChannelFutureListener) f -> {
-            HmMq2tImpl.this.channel = f.channel();
-            logger.debug("Waiting for ConnAckMessage. ChannelFuture isDone={}, isSuccess={}, isCancelled={}, future={}", f.isDone(), f.isSuccess(), f.isCancelled(), f);
+        ScheduledFuture<?> connAckTimeout = this.stateLoop.schedule(() -> {
+            authFuture.tryFailure(new TimeoutException("ConnAckMessage has not been received within " + this.connectTimeout + " ms."));
+        }, this.connectTimeout, TimeUnit.MILLISECONDS);
+        authFuture.addListener(f -> {
+            connAckTimeout.cancel(false);
+            this.onConnectComplete(ch, f);
         });
+    }
 
-        logger.info("Connecting to {} via port {}.", this.appProperties.getHost(), this.appProperties.getPort());
-        channelFuture.awaitUninterruptibly();
-        if (channelFuture.isCancelled()) {
-            logger.info("Connection attempt cancelled.");
-            this.cancelConnect();
-        } else if (!channelFuture.isSuccess()) {
-            logger.info("Connection attempt failed {}.", channelFuture.cause().getMessage());
-            this.cancelConnect();
-        } else {
-            logger.info("Connected to {} via port {}.", this.appProperties.getHost(), this.appProperties.getPort());
+    private void onConnectComplete(Channel ch, Future<?> f) {
+        if (ch != this.channel || this.state != MqttConnectionState.CONNECTING) {
+            logger.debug("Stale connection attempt completed. future={}", f);
+            return;
+        }
+        if (f.isSuccess()) {
+            logger.debug("Connection accepted. CONNACK message has been received {}.", ((MqttConnAckMessage) f.getNow()).variableHeader());
+            this.transition(MqttConnectionState.CONNECTED);
+            this.reconnectAttempts = 0;
+            this.reconnecting = false;
+            this.resumeRetransmission();
+            this.startReplay();
+            return;
         }
 
-        return authFuture;
-
-    }
-
-    private void cancelConnect() {
-        Promise<MqttConnAckMessage> authFuture = mqttAckMediator.getConnectFuture();
-        if (authFuture != null && !authFuture.isDone()) {
-            authFuture.cancel(true);
-            logger.debug("Cancel auth future.");
+        logger.info("Connection attempt failed. isCancelled={}. {}", f.isCancelled(), f.cause() == null ? "" : f.cause().getMessage());
+        ch.close();
+        if (this.reconnecting && this.appProperties.getReconnect()) {
+            this.scheduleReconnect();
+        } else {
+            this.transition(MqttConnectionState.DISCONNECTED);
         }
-        connecting.set(false);
-        connected.set(false);
     }
 
-    @Override
-    public void reconnect() {
-        logger.debug("Start reconnect method.");
-        if (!this.appProperties.getReconnect()) {
-            logger.info("Reconnect is not allowed by config.");
+    private void onChannelClosed(Channel ch) {
+        if (ch != this.channel) {
             return;
         }
-
-        if (reconnecting.get() || connecting.get()) {
-            logger.info("Unable to start reconnecting. The connection is being reconnected.");
-            return;
+        logger.info("Channel has been closed. state={}.", this.state);
+        this.suspendRetransmission();
+        switch (this.state) {
+            case CONNECTED -> {
+                if (this.appProperties.getReconnect()) {
+                    this.scheduleReconnect();
+                } else {
+                    this.transition(MqttConnectionState.DISCONNECTED);
+                }
+            }
+            case CONNECTING -> {
+                Promise<MqttConnAckMessage> authFuture = this.mqttAckMediator.getConnectFuture();
+                if (authFuture != null) {
+                    authFuture.tryFailure(new ClosedChannelException());
+                }
+            }
+            case CLOSING ->
+                this.transition(MqttConnectionState.DISCONNECTED);
+            default -> {
+            }
         }
+    }
 
-        reconnecting.set(true);
-        reconnectAttempts = reconnectAttempts + 1;
-        logger.info("Start reconnect! Attempt {}.", reconnectAttempts);
-
-        this.disconnect(MqttReasonCodeAndPropertiesVariableHeader.REASON_CODE_OK);
+    /**
+     * Schedules the next connection attempt. The delay doubles with each
+     * attempt from reconnect-delay up to reconnect-delay-max, the actual delay
+     * is taken randomly from the upper half of it, so that many clients do not
+     * reconnect at the same moment.
+     */
+    private void scheduleReconnect() {
+        this.reconnecting = true;
+        int attempt = ++this.reconnectAttempts;
+        long delay = Math.min((long) this.reconnectDelay << Math.min(attempt - 1, 20), this.reconnectDelayMax);
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        this.transition(MqttConnectionState.BACKOFF);
+        logger.info("Reconnect attempt {} in {} ms.", attempt, delay);
+        this.backoffFuture = this.stateLoop.schedule(() -> {
+            this.backoffFuture = null;
+            if (this.state == MqttConnectionState.BACKOFF) {
+                this.doConnect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
 
-        int timeout = this.reconnectDelay * reconnectAttempts;
-        if (timeout > this.reconnectDelayMax) {
-            timeout = this.reconnectDelayMax;
+    private void cancelBackoff() {
+        if (this.backoffFuture != null) {
+            this.backoffFuture.cancel(false);
+            this.backoffFuture = null;
         }
+    }
 
-        try {
-            TimeUnit.MILLISECONDS.sleep(timeout);
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-            logger.info("InterruptedException while reconnect delay.", ex);
-        }
-
-        Promise<MqttConnAckMessage> reconnectFuture = this.connect();
-        reconnectFuture.awaitUninterruptibly(this.connectTimeout);
-        if (reconnectFuture.isCancelled()) {
-            logger.info("Reconnection canceled.");
-        } else if (!reconnectFuture.isSuccess()) {
-            logger.info("Reconnection failed");
-        } else {
-            logger.info("Reconnection is successful.");
+    private void transition(MqttConnectionState newState) {
+        MqttConnectionState previous = this.state;
+        if (previous == newState) {
+            return;
         }
-        reconnecting.set(false);
+        this.state = newState;
+        logger.info("Connection state has been changed from {} to {}.", previous, newState);
+        this.eventPublisher.publishEvent(new MqttConnectionStateEvent(this, previous, newState, this.reconnecting, this.reconnectAttempts));
+    }
+
+    @Override
+    public void reconnect() {
+        logger.debug("Start reconnect method.");
+        this.stateLoop.execute(() -> {
+            if (!this.appProperties.getReconnect()) {
+                logger.info("Reconnect is not allowed by config.");
+                return;
+            }
+            if (this.state == MqttConnectionState.CONNECTING || this.state == MqttConnectionState.BACKOFF) {
+                logger.info("Unable to start reconnecting. The connection is being reconnected. state={}.", this.state);
+                return;
+            }
+
+            logger.info("Start reconnect!");
+            this.releaseSession();
+            this.scheduleReconnect();
+            this.sendDisconnect(MqttReasonCodeAndPropertiesVariableHeader.REASON_CODE_OK);
+        });
     }
 
     private Optional<MqttPingScheduleHandler> getPingHandler() {
-        return Optional.ofNullable(((MqttPingScheduleHandler) channel.pipeline().get(MqttPingScheduleHandler.NAME)));
+        Channel ch = this.channel;
+        return ch == null ? Optional.empty() : Optional.ofNullable(((MqttPingScheduleHandler) ch.pipeline().get(MqttPingScheduleHandler.NAME)));
     }
 
     @Override
     public boolean isConnected() {
-        return connected.get();
+        return this.state == MqttConnectionState.CONNECTED;
+    }
+
+    @Override
+    public MqttConnectionState getState() {
+        return this.state;
     }
 
     @Override
     public void disconnect(byte reasonCode) {
-        Promise<MqttConnAckMessage> authFuture = mqttAckMediator.getConnectFuture();
-        if (authFuture != null && !authFuture.isDone()) {
-            authFuture.cancel(true);
-        }
-        connecting.set(false);
+        this.stateLoop.execute(() -> {
+            this.cancelBackoff();
+            this.reconnecting = false;
+            this.reconnectAttempts = 0;
+            if (this.state == MqttConnectionState.DISCONNECTED) {
+                logger.info("Disconnected already.");
+                this.releaseSession();
+                return;
+            }
+
+            this.transition(MqttConnectionState.CLOSING);
+            Promise<MqttConnAckMessage> authFuture = this.mqttAckMediator.getConnectFuture();
+            if (authFuture != null && !authFuture.isDone()) {
+                authFuture.cancel(true);
+            }
 
-        this.getPingHandler().ifPresent(pingHandler -> pingHandler.stopPing());
+            this.getPingHandler().ifPresent(pingHandler -> pingHandler.stopPing());
+            this.suspendRetransmission();
+            this.releaseSession();
 
-        this.stopRetransmitTask();
+            Channel ch = this.channel;
+            this.sendDisconnect(reasonCode);
+            if (ch == null || !ch.isOpen()) {
+                this.transition(MqttConnectionState.DISCONNECTED);
+            }
 
+            consecutiveWriteFailerCount.set(0);
+            writeFailureCount.set(0);
+        });
+    }
+
+    /**
+     * Forgets the session state if the session is not kept by the broker. The
+     * futures of the in-flight messages are completed exceptionally, since no
+     * acknowledgement will come for them. Journaled messages are still sent
+     * again after the connection has been established.
+     */
+    private void releaseSession() {
         if (this.appProperties.getCleanSession()) {
+            this.failInFlight(new IllegalStateException("Session discarded"));
             this.mqttAckMediator.clear();
+            this.releaseJournal();
+            this.packetIdAllocator.releaseAll();
+            this.publishWindow.releaseAll();
             this.subscribedTopics.clear();
         }
+    }
+
+    private void failInFlight(Throwable cause) {
+        int failed = 0;
+        for (int id = 1; id <= MqttPacketIdTable.MAX_PACKET_ID; id++) {
+            Promise<MqttMessage> future = this.mqttAckMediator.getFuture(id);
+            if (future != null && future.tryFailure(cause)) {
+                ++failed;
+            }
+        }
+        if (failed > 0) {
+            logger.info("In-flight messages have been discarded with the session. Amount={}.", failed);
+        }
+    }
+
+    /**
+     * Sends DISCONNECT message and closes the channel when the message has
+     * been written, but not later than wait-disconnect-while-shutdown.
+     */
+    private void sendDisconnect(byte reasonCode) {
+        Channel ch = this.channel;
+        if (ch == null) {
+            return;
+        }
+        if (!ch.isActive()) {
+            ch.close();
+            logger.info("Close channel");
+            return;
+        }
 
         MqttFixedHeader mqttFixedHeader = new MqttFixedHeader(MqttMessageType.DISCONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0);
         MqttReasonCodeAndPropertiesVariableHeader mqttDisconnectVariableHeader = new MqttReasonCodeAndPropertiesVariableHeader(reasonCode, MqttProperties.NO_PROPERTIES);
         MqttMessage message = new MqttMessage(mqttFixedHeader, mqttDisconnectVariableHeader);
 
-        this.writeAndFlush(message);
+        ch.writeAndFlush(message).addListener(ChannelFutureListener.CLOSE);
+        ch.eventLoop().schedule(() -> ch.close(), this.waitDisconnect, TimeUnit.MILLISECONDS);
 
         logger.info("Sent disconnection message reason={}, d={}, q={}, r={}.",
                 mqttDisconnectVariableHeader.reasonCode(),
@@ -289,48 +516,31 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
                 message.fixedHeader().qosLevel(),
                 message.fixedHeader().isRetain()
         );
-
-        try {
-            TimeUnit.MILLISECONDS.sleep(waitDisconnect);
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-            logger.info("Disconnect message has been send. InterruptedException while timeout.", ex);
-        }
-
-        this.shutdown();
-
-        connected.set(false);
-        consecutiveWriteFailerCount.set(0);
-        writeFailureCount.set(0);
-    }
-
-    private void shutdown() {
-        if (this.channel != null) {
-            this.channel.close();
-            logger.info("Close channel");
-        }
-
-        this.workerGroup.shutdownGracefully().awaitUninterruptibly();
-        logger.info("Shutdown gracefully");
     }
 
     @Override
     public Promise<MqttSubAckMessage> subscribe(List<MqttTopicSubscription> subscriptions) {
         int id = getNewMessageId();
+        if (id == MqttPacketIdAllocator.NO_ID) {
+            return ImmediateEventExecutor.INSTANCE.<MqttSubAckMessage>newPromise().setFailure(new IllegalStateException("No free packet id for SUBSCRIBE message."));
+        }
         MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.SUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0);
         MqttMessageIdVariableHeader variableHeader = MqttMessageIdVariableHeader.from(id);
         MqttSubscribePayload payload = new MqttSubscribePayload(subscriptions);
         MqttSubscribeMessage message = new MqttSubscribeMessage(fixedHeader, variableHeader, payload);
 
-        Promise<MqttSubAckMessage> subscribeFuture = new DefaultPromise<>(this.workerGroup.next());
+        Promise<MqttSubAckMessage> subscribeFuture = new DefaultPromise<>(this.stateLoop);
         this.mqttAckMediator.add(id, subscribeFuture, message);
         subscribeFuture.addListener((Promise<MqttSubAckMessage> f) -> {
-            HmMq2tImpl.this.handleSubAckMessage(f.get());
+            if (f.isSuccess()) {
+                HmMq2tImpl.this.handleSubAckMessage(f.get());
+            }
         });
 
         ReferenceCountUtil.retain(message); //TODO is it nessesary?
 
         this.writeAndFlush(message);
+        this.scheduleRetransmit(id, message);
         logger.info("Sent SUBSCRIBE message id={}, d={}, q={}, r={}.", message.variableHeader().messageId(), message.fixedHeader().isDup(), message.fixedHeader().qosLevel(), message.fixedHeader().isRetain());
 
         return subscribeFuture;
@@ -345,6 +555,8 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
             return;
         } */
         this.mqttAckMediator.remove(id);
+        this.cancelRetransmit(id);
+        this.packetIdAllocator.release(id);
         logger.info("Subscribe message id={} has been acknowledged.", id);
 
         List<MqttTopicSubscription> topics = subscribeMessage.payload().topicSubscriptions();
@@ -368,50 +580,118 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
         logger.info("Active topics list=[{}].", this.getSubscribedTopicAndQosAsString());
     }
 
+    /**
+     * Publishes the message. QoS 1/2 messages take a slot of the in-flight
+     * window, see max-in-flight, max-in-flight-bytes and
+     * in-flight-overflow-policy.
+     *
+     * @return a future that completes when the message has been written (QoS
+     * 0), acknowledged by PUBACK (QoS 1) or PUBCOMP (QoS 2), or completes
+     * exceptionally if the message has been rejected or dropped
+     */
     @Override
-    public void publish(String topic, ByteBuf payload, MqttQoS qos, boolean retain) {
-        switch (qos) {
-            case MqttQoS.AT_MOST_ONCE -> {
-                this.publishAtMostOnce(topic, payload, retain);
-            }
-            case MqttQoS.AT_LEAST_ONCE -> {
-                this.publishAtLeastOnce(topic, payload, retain);
-            }
-            case MqttQoS.EXACTLY_ONCE -> {
-                this.publishExactlyOnce(topic, payload, retain);
-            }
+    public CompletableFuture<Void> publish(String topic, ByteBuf payload, MqttQoS qos, boolean retain) {
+        //while older messages wait in the journal, new ones are queued after them
+        if (this.journal.isEnabled() && (this.state != MqttConnectionState.CONNECTED || this.replaying.get() || this.journal.hasUndispatched())) {
+            return this.publishToJournal(topic, payload, qos, retain);
+        }
+
+        return this.publish(topic, payload, qos, retain, MqttOutboundJournal.NO_SEQ, new CompletableFuture<>());
+    }
+
+    private CompletableFuture<Void> publish(String topic, ByteBuf payload, MqttQoS qos, boolean retain, long seq, CompletableFuture<Void> completion) {
+        return switch (qos) {
+            case MqttQoS.AT_LEAST_ONCE ->
+                this.publishAtLeastOnce(topic, payload, retain, seq, completion);
+            case MqttQoS.EXACTLY_ONCE ->
+                this.publishExactlyOnce(topic, payload, retain, seq, completion);
+            default ->
+                this.publishAtMostOnce(topic, payload, retain, seq, completion);
+        };
+    }
+
+    /**
+     * Appends the message to the outbound journal while the client is not
+     * connected or the journal is being replayed, so that the messages are
+     * sent in order after the connection has been established.
+     */
+    private CompletableFuture<Void> publishToJournal(String topic, ByteBuf payload, MqttQoS qos, boolean retain) {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        long seq = this.journal.append(topic, qos, retain, payload, false);
+        ReferenceCountUtil.release(payload);
+        if (seq == MqttOutboundJournal.NO_SEQ) {
+            logger.error("Publish message t={}, q={} has been rejected. Journal is full. state={}.", topic, qos, this.state);
+            completion.completeExceptionally(new RejectedExecutionException("Publish message has been rejected. Journal is full."));
+            return completion;
         }
+        this.journalCompletions.put(seq, completion);
+        logger.info("Publish message t={}, q={} has been journaled. seq={}, state={}.", topic, qos, seq, this.state);
+        if (this.state == MqttConnectionState.CONNECTED) {
+            this.startReplay();
+        }
+
+        return completion;
     }
 
-    public void publishAtMostOnce(String topic, ByteBuf payload, boolean retain) {
+    private CompletableFuture<Void> publishAtMostOnce(String topic, ByteBuf payload, boolean retain, long seq, CompletableFuture<Void> completion) {
+        Channel ch = this.channel;
+        if (ch != null && ch.isActive() && !ch.isWritable()) {
+            this.rejectPublish(topic, MqttQoS.AT_MOST_ONCE, payload, completion, "Channel is not writable");
+            return completion;
+        }
+
         MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, retain, 0);
         MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(topic, -1);
         MqttPublishMessage message = new MqttPublishMessage(fixedHeader, variableHeader, payload);
 
-        this.writeAndFlush(message);
+        ChannelFuture writeFuture = this.writeAndFlush(message);
+        this.journal.ack(seq);  //QoS 0 message is sent once, even if it has been journaled
+        if (writeFuture == null) {
+            completion.completeExceptionally(new IllegalStateException("Channel is null."));
+        } else {
+            writeFuture.addListener((ChannelFutureListener) f -> {
+                if (f.isSuccess()) {
+                    completion.complete(null);
+                } else {
+                    completion.completeExceptionally(f.cause());
+                }
+            });
+        }
         logger.info("Sent publish message id={}, t={}, d={}, q={}, r={}.",
                 message.variableHeader().packetId(),
                 message.variableHeader().topicName(),
                 message.fixedHeader().isDup(),
                 message.fixedHeader().qosLevel(),
                 message.fixedHeader().isRetain());
+
+        return completion;
     }
 
-    public void publishAtLeastOnce(String topic, ByteBuf payload, boolean retain) {
-        int id = this.getNewMessageId();
+    private CompletableFuture<Void> publishAtLeastOnce(String topic, ByteBuf payload, boolean retain, long seq, CompletableFuture<Void> completion) {
+        int id = this.admitPublish(topic, MqttQoS.AT_LEAST_ONCE, payload, completion);
+        if (id == MqttPacketIdAllocator.NO_ID) {
+            return completion;
+        }
+        this.bindJournal(id, seq, topic, MqttQoS.AT_LEAST_ONCE, retain, payload);
         MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, retain, 0);
         MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(topic, id);
         MqttPublishMessage message = new MqttPublishMessage(fixedHeader, variableHeader, payload);
 
-        Promise<MqttPubAckMessage> publishFuture = new DefaultPromise<>(this.workerGroup.next());
+        Promise<MqttPubAckMessage> publishFuture = new DefaultPromise<>(this.stateLoop);
         this.mqttAckMediator.add(id, publishFuture, message);
         publishFuture.addListener((Promise<MqttPubAckMessage> f) -> {
-            HmMq2tImpl.this.handlePubAckMessage(f.get());
+            if (f.isSuccess()) {
+                HmMq2tImpl.this.handlePubAckMessage(f.get());
+                completion.complete(null);
+            } else {
+                completion.completeExceptionally(f.cause());
+            }
         });
 
         ReferenceCountUtil.retain(message); //TODO is it nessesary?
 
         this.writeAndFlush(message);
+        this.scheduleRetransmit(id, message);
         logger.info("Sent publish message id={}, t={}, d={}, q={}, r={}.",
                 message.variableHeader().packetId(),
                 message.variableHeader().topicName(),
@@ -419,6 +699,8 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
                 message.fixedHeader().qosLevel(),
                 message.fixedHeader().isRetain()
         );
+
+        return completion;
     }
 
     private void handlePubAckMessage(MqttPubAckMessage pubAckMessage) {
@@ -429,25 +711,38 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
              return;
         }*/
         this.mqttAckMediator.remove(id);
+        this.cancelRetransmit(id);
+        this.ackJournal(id);
+        this.releaseWindow(id);
+        this.packetIdAllocator.release(id);
         logger.info("PublishMessage id={} has been acknowledged.", id);
         ReferenceCountUtil.release(publishMessage);
     }
 
-    public void publishExactlyOnce(String topic, ByteBuf payload, boolean retain) {
-        int id = this.getNewMessageId();
+    private CompletableFuture<Void> publishExactlyOnce(String topic, ByteBuf payload, boolean retain, long seq, CompletableFuture<Void> completion) {
+        int id = this.admitPublish(topic, MqttQoS.EXACTLY_ONCE, payload, completion);
+        if (id == MqttPacketIdAllocator.NO_ID) {
+            return completion;
+        }
+        this.bindJournal(id, seq, topic, MqttQoS.EXACTLY_ONCE, retain, payload);
         MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.EXACTLY_ONCE, retain, 0);
         MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(topic, id);
         MqttPublishMessage message = new MqttPublishMessage(fixedHeader, variableHeader, payload);
 
-        Promise<MqttMessage> publishFuture = new DefaultPromise<>(this.workerGroup.next());
+        Promise<MqttMessage> publishFuture = new DefaultPromise<>(this.stateLoop);
         this.mqttAckMediator.add(id, publishFuture, message);
         publishFuture.addListener((Promise<MqttMessage> f) -> {
-            HmMq2tImpl.this.handlePubRecMessage(f.get());
+            if (f.isSuccess()) {
+                HmMq2tImpl.this.handlePubRecMessage(f.get(), completion);
+            } else {
+                completion.completeExceptionally(f.cause());
+            }
         });
 
         ReferenceCountUtil.retain(message); //TODO is it nessesary?
 
         this.writeAndFlush(message);
+        this.scheduleRetransmit(id, message);
         logger.info("Sent publish message id={}, t={}, d={}, q={}, r={}.",
                 message.variableHeader().packetId(),
                 message.variableHeader().topicName(),
@@ -455,9 +750,11 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
                 message.fixedHeader().qosLevel(),
                 message.fixedHeader().isRetain()
         );
+
+        return completion;
     }
 
-    private void handlePubRecMessage(MqttMessage pubRecMessage) {
+    private void handlePubRecMessage(MqttMessage pubRecMessage, CompletableFuture<Void> completion) {
         int id = ((MqttMessageIdVariableHeader) pubRecMessage.variableHeader()).messageId();
         MqttPublishMessage publishMessage = this.mqttAckMediator.getMessage(id);
         /* if (publishMessage == null ) {
@@ -465,33 +762,48 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
             return;
         } */
         this.mqttAckMediator.remove(id);
+        this.cancelRetransmit(id);
+        this.markJournalInFlight(id, true);
         logger.info("Publish message id={} has been acknowledged.", id);
         ReferenceCountUtil.release(publishMessage);
-        this.sendPubRelMessage(id);
+        this.sendPubRelMessage(id, completion);
     }
 
-    private void sendPubRelMessage(int id) {
-        MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0);
-        MqttMessageIdVariableHeader variableHeader = MqttMessageIdVariableHeader.from(id);
-        MqttMessage pubrelMessage = new MqttMessage(fixedHeader, variableHeader);
-
-        Promise<MqttMessage> pubRelFuture = new DefaultPromise<>(this.workerGroup.next());
-        this.mqttAckMediator.add(id, pubRelFuture, pubrelMessage);
-        pubRelFuture.addListener((Promise<MqttMessage> f) -> {
-            HmMq2tImpl.this.handlePubCompMessage(f.get());
-        });
+    private void sendPubRelMessage(int id, CompletableFuture<Void> completion) {
+        MqttMessage pubrelMessage = this.storePubRelMessage(id, completion);
 
         ReferenceCountUtil.retain(pubrelMessage); //TODO is it nessesary?
 
         this.writeAndFlush(pubrelMessage);
+        this.scheduleRetransmit(id, pubrelMessage);
         logger.info("Sent PUBREL message id={}, d={}, q={}, r={}.",
-                variableHeader.messageId(),
+                id,
                 pubrelMessage.fixedHeader().isDup(),
                 pubrelMessage.fixedHeader().qosLevel(),
                 pubrelMessage.fixedHeader().isRetain()
         );
     }
 
+    private MqttMessage storePubRelMessage(int id, CompletableFuture<Void> completion) {
+        MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0);
+        MqttMessageIdVariableHeader variableHeader = MqttMessageIdVariableHeader.from(id);
+        MqttMessage pubrelMessage = new MqttMessage(fixedHeader, variableHeader);
+
+        Promise<MqttMessage> pubRelFuture = new DefaultPromise<>(this.stateLoop);
+        this.mqttAckMediator.add(id, pubRelFuture, pubrelMessage);
+        this.publishWindow.markReleased(id);
+        pubRelFuture.addListener((Promise<MqttMessage> f) -> {
+            if (f.isSuccess()) {
+                HmMq2tImpl.this.handlePubCompMessage(f.get());
+                completion.complete(null);
+            } else {
+                completion.completeExceptionally(f.cause());
+            }
+        });
+
+        return pubrelMessage;
+    }
+
     private void handlePubCompMessage(MqttMessage pubCompMessage) {
         int id = ((MqttMessageIdVariableHeader) pubCompMessage.variableHeader()).messageId();
         MqttMessage pubrelMessage = this.mqttAckMediator.getMessage(id);
@@ -500,17 +812,242 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
             return;
         } */
         this.mqttAckMediator.remove(id);
+        this.cancelRetransmit(id);
+        this.ackJournal(id);
+        this.releaseWindow(id);
+        this.packetIdAllocator.release(id);
         logger.info("PubRelMessage id={} has been acknowledged.", id);
         ReferenceCountUtil.release(pubrelMessage);
 
     }
 
+    /**
+     * Allocates a packet id and a slot of the in-flight window for a QoS 1/2
+     * publish message. If the message can not be admitted, the payload is
+     * released and the completion is failed.
+     *
+     * @return the packet id or MqttPacketIdAllocator.NO_ID if the message has
+     * been rejected
+     */
+    private int admitPublish(String topic, MqttQoS qos, ByteBuf payload, CompletableFuture<Void> completion) {
+        int id = this.getNewMessageId();
+        if (id == MqttPacketIdAllocator.NO_ID) {
+            this.rejectPublish(topic, qos, payload, completion, "No free packet id");
+            return MqttPacketIdAllocator.NO_ID;
+        }
+
+        long timeout = this.isInEventLoop() ? 0 : this.inFlightBlockTimeout;
+        if (!this.publishWindow.acquire(id, payload.readableBytes(), timeout, this::dropOldest)) {
+            this.packetIdAllocator.release(id);
+            this.rejectPublish(topic, qos, payload, completion, "In-flight window is full. Policy=" + this.publishWindow.getPolicy());
+            return MqttPacketIdAllocator.NO_ID;
+        }
+
+        return id;
+    }
+
+    private void rejectPublish(String topic, MqttQoS qos, ByteBuf payload, CompletableFuture<Void> completion, String reason) {
+        ReferenceCountUtil.release(payload);
+        logger.error("Publish message t={}, q={} has been rejected. {}. In flight={}, bytes={}.", topic, qos, reason, this.publishWindow.size(), this.publishWindow.bytes());
+        completion.completeExceptionally(new RejectedExecutionException("Publish message has been rejected. " + reason + "."));
+    }
+
+    /**
+     * Drops the message evicted from the in-flight window. A message that has
+     * got PUBREC meanwhile is kept, the broker holds its packet id.
+     */
+    private void dropOldest(int id) {
+        this.stateLoop.execute(() -> {
+            MqttMessage message = this.mqttAckMediator.getMessage(id);
+            if (message instanceof MqttPublishMessage) {
+                this.dropInFlight(id, message, "Dropped by in-flight overflow policy", 0);
+            }
+        });
+    }
+
+    /**
+     * Binds the journal record of the message to its packet id. A message
+     * that is not replayed from the journal is journaled here, so that it is
+     * not lost if it is not acknowledged before a restart.
+     */
+    private void bindJournal(int id, long seq, String topic, MqttQoS qos, boolean retain, ByteBuf payload) {
+        if (seq == MqttOutboundJournal.NO_SEQ) {
+            seq = this.journal.append(topic, qos, retain, payload, true);
+        }
+        this.journalSeqs.set(id, seq);
+        this.markJournalInFlight(id, false);
+    }
+
+    /**
+     * Journals the packet id of the message and whether PUBREL has been sent,
+     * so that the message is resent with the same packet id after a restart.
+     * The broker keeps the state of a persistent session only.
+     */
+    private void markJournalInFlight(int id, boolean released) {
+        long seq = this.journalSeqs.get(id);
+        if (seq != MqttOutboundJournal.NO_SEQ && !this.appProperties.getCleanSession()) {
+            this.journal.setInFlight(seq, id, released);
+        }
+    }
+
+    /**
+     * Stores the journaled messages that had been sent in the previous run of
+     * a persistent session under their packet ids. They are resent as
+     * duplicates, or their PUBREL is resent, when the connection has been
+     * established. A message that can not be restored is sent again as a new
+     * one.
+     */
+    private void restoreInFlight() {
+        if (!this.journal.isEnabled() || this.appProperties.getCleanSession()) {
+            return;
+        }
+        int restored = 0;
+        for (MqttOutboundJournal.Record record : this.journal.pollInFlight()) {
+            int id = record.packetId();
+            if (!this.packetIdAllocator.reserve(id)) {
+                logger.warn("Packet id={} of journal message seq={} is in use. Message is sent as a new one.", id, record.seq());
+                this.journal.requeue(record.seq());
+                continue;
+            }
+            if (!this.publishWindow.acquire(id, record.payload().length, 0, this::dropOldest)) {
+                logger.warn("In-flight window is full. Journal message seq={} is sent as a new one.", record.seq());
+                this.packetIdAllocator.release(id);
+                this.journal.requeue(record.seq());
+                continue;
+            }
+            this.journalSeqs.set(id, record.seq());
+            CompletableFuture<Void> completion = new CompletableFuture<>();
+            if (record.released()) {
+                this.storePubRelMessage(id, completion);
+            } else {
+                this.storePublishMessage(id, record, completion);
+            }
+            ++restored;
+        }
+        if (restored > 0) {
+            logger.info("In-flight messages have been restored from the journal. Amount={}.", restored);
+        }
+    }
+
+    private void storePublishMessage(int id, MqttOutboundJournal.Record record, CompletableFuture<Void> completion) {
+        MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, record.qos(), record.retain(), 0);
+        MqttPublishVariableHeader variableHeader = new MqttPublishVariableHeader(record.topic(), id);
+        MqttPublishMessage message = new MqttPublishMessage(fixedHeader, variableHeader, Unpooled.wrappedBuffer(record.payload()));
+
+        Promise<MqttMessage> publishFuture = new DefaultPromise<>(this.stateLoop);
+        this.mqttAckMediator.add(id, publishFuture, message);
+        publishFuture.addListener((Promise<MqttMessage> f) -> {
+            if (!f.isSuccess()) {
+                completion.completeExceptionally(f.cause());
+            } else if (record.qos() == MqttQoS.EXACTLY_ONCE) {
+                HmMq2tImpl.this.handlePubRecMessage(f.get(), completion);
+            } else {
+                HmMq2tImpl.this.handlePubAckMessage((MqttPubAckMessage) f.get());
+                completion.complete(null);
+            }
+        });
+    }
+
+    private void ackJournal(int id) {
+        long seq = this.journalSeqs.getAndSet(id, MqttOutboundJournal.NO_SEQ);
+        if (seq != MqttOutboundJournal.NO_SEQ) {
+            this.journal.ack(seq);
+        }
+    }
+
+    /**
+     * Returns the journaled messages of the dropped session to the replay
+     * queue. They are sent again as new messages after the connection has
+     * been established.
+     */
+    private void releaseJournal() {
+        if (!this.journal.isEnabled()) {
+            return;
+        }
+        for (int id = 1; id <= MqttPacketIdTable.MAX_PACKET_ID; id++) {
+            this.journalSeqs.set(id, MqttOutboundJournal.NO_SEQ);
+        }
+        this.journal.requeueAll();
+    }
+
+    /**
+     * Frees the window slot of the message. A replay that has stopped on a
+     * rejected message is continued.
+     */
+    private void releaseWindow(int id) {
+        this.publishWindow.release(id);
+        this.retryReplay();
+    }
+
+    private void retryReplay() {
+        if (this.replayStalled && this.state == MqttConnectionState.CONNECTED) {
+            this.replayStalled = false;
+            this.startReplay();
+        }
+    }
+
+    private void startReplay() {
+        if (this.journal.isEnabled() && this.journal.hasUndispatched() && this.replaying.compareAndSet(false, true)) {
+            this.taskExecutor.execute(this::replayJournal);
+        }
+    }
+
+    /**
+     * Sends the journaled messages in order. Runs on a pool thread, because
+     * the in-flight window may block. New messages are journaled meanwhile, so
+     * they are sent after the replayed ones.
+     */
+    private void replayJournal() {
+        int replayed = 0;
+        boolean rejected = false;
+        try {
+            MqttOutboundJournal.Record record;
+            while (this.state == MqttConnectionState.CONNECTED && (record = this.journal.pollUndispatched()) != null) {
+                long seq = record.seq();
+                CompletableFuture<Void> attempt = this.publish(record.topic(), Unpooled.wrappedBuffer(record.payload()), record.qos(), record.retain(), seq, new CompletableFuture<>());
+                if (attempt.isCompletedExceptionally() && attempt.exceptionNow() instanceof RejectedExecutionException) {
+                    this.journal.requeue(seq);
+                    rejected = true;
+                    this.replayStalled = true;
+                    break;
+                }
+                attempt.whenComplete((v, ex) -> {
+                    CompletableFuture<Void> completion = this.journalCompletions.remove(seq);
+                    if (completion == null) {
+                        return;
+                    }
+                    if (ex == null) {
+                        completion.complete(null);
+                    } else {
+                        completion.completeExceptionally(ex);
+                    }
+                });
+                ++replayed;
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Journal replay failed.", ex);
+            rejected = true;
+            this.replayStalled = true;
+        } finally {
+            this.replaying.set(false);
+        }
+        logger.info("Journal replay has been stopped. Replayed={}, left={}, state={}.", replayed, this.journal.size(), this.state);
+
+        if (!rejected && this.state == MqttConnectionState.CONNECTED) {
+            this.startReplay();     //messages journaled after the last poll
+        } else if (rejected) {
+            //a freed window slot continues the replay earlier
+            this.stateLoop.schedule(this::retryReplay, this.replayRetryDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
     private ChannelFuture writeAndFlush(Object message) {
         if (this.channel == null) {
             logger.error("Cannot write and flush message. Channel is null. Total failures={}, consecutive failures={}.",
                     writeFailureCount.incrementAndGet(),
                     consecutiveWriteFailerCount.incrementAndGet()
             );
+            ReferenceCountUtil.release(message);
             return null;
         }
         if (this.channel.isActive()) {
@@ -532,45 +1069,57 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
                 writeFailureCount.incrementAndGet(),
                 consecutiveWriteFailerCount.incrementAndGet()
         );
+        ReferenceCountUtil.release(message);
         return this.channel.newFailedFuture(new RuntimeException("Cannot write and flush message. Channel is closed."));
     }
 
+    /**
+     * Allocates a packet id for a new message. If all ids are in flight, the
+     * caller waits for a free one up to packet-id-acquire-timeout. The event
+     * loop thread never waits, because it has to process the acknowledgements
+     * that free the ids.
+     *
+     * @return the packet id or MqttPacketIdAllocator.NO_ID if there is no free
+     * id
+     */
     private int getNewMessageId() {
-        int i = 0;
-        this.nextMessageId.compareAndSet(0xffff, 1);
-        int id = this.nextMessageId.getAndIncrement();
-
-        while (this.mqttAckMediator.isContainId(id)) {
-            if (this.nextMessageId.compareAndSet(0xffff, 1)) {
-                ++i;
-                if (i >= 2) {
-                    this.mqttAckMediator.clear();
-                    this.disconnect((byte) 1);
-                }
-            }
-            id = this.nextMessageId.getAndIncrement();
+        long timeout = this.isInEventLoop() ? 0 : this.packetIdAcquireTimeout;
+        int id = this.packetIdAllocator.acquire(timeout);
+        if (id == MqttPacketIdAllocator.NO_ID) {
+            logger.error("No free packet id. Amount of messages in flight={}.", this.packetIdAllocator.inUse());
         }
 
         return id;
     }
 
+    private boolean isInEventLoop() {
+        Channel ch = this.channel;
+        return ch != null && ch.eventLoop().inEventLoop();
+    }
+
     @Override
     public Promise<MqttUnsubAckMessage> unsubscribe(List<String> topics) {
         int id = getNewMessageId();
+        if (id == MqttPacketIdAllocator.NO_ID) {
+            return ImmediateEventExecutor.INSTANCE.<MqttUnsubAckMessage>newPromise().setFailure(new IllegalStateException("No free packet id for UNSUBSCRIBE message."));
+        }
         MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.UNSUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0);
         MqttMessageIdVariableHeader variableHeader = MqttMessageIdVariableHeader.from(id);
         MqttUnsubscribePayload payload = new MqttUnsubscribePayload(topics);
         MqttUnsubscribeMessage unSubscribeMessage = new MqttUnsubscribeMessage(fixedHeader, variableHeader, payload);
 
-        Promise<MqttUnsubAckMessage> unSubscribeFuture = new DefaultPromise<>(this.workerGroup.next());
+        Promise<MqttUnsubAckMessage> unSubscribeFuture = new DefaultPromise<>(this.stateLoop);
         this.mqttAckMediator.add(id, unSubscribeFuture, unSubscribeMessage);
         unSubscribeFuture.addListener((Promise<MqttUnsubAckMessage> f) -> {
-            HmMq2tImpl.this.handleUnSubAckMessage(f.get());
+            if (f.isSuccess()) {
+                HmMq2tImpl.this.handleUnSubAckMessage(f.get());
+            }
         });
 
         ReferenceCountUtil.retain(unSubscribeMessage); //TODO is it nessesary?
 
         this.writeAndFlush(unSubscribeMessage);
+        this.scheduleRetransmit(id, unSubscribeMessage);
         logger.info("Sent unsubscribe message id={}, d={}, q={}, r={}.",
                 unSubscribeMessage.variableHeader().messageId(),
                 unSubscribeMessage.fixedHeader().isDup(),
@@ -585,6 +1134,8 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
         int id = unSubAckMessage.variableHeader().messageId();
         MqttUnsubscribeMessage unSubscribeMessage = this.mqttAckMediator.getMessage(id);
         this.mqttAckMediator.remove(id);
+        this.cancelRetransmit(id);
+        this.packetIdAllocator.release(id);
         this.subscribedTopics.keySet().removeAll(unSubscribeMessage.payload().topics());
         logger.info("Unsubscribe message id={} has been acknowledged.", id);
         logger.info("Clear active topics. List={}.", unSubscribeMessage.payload().topics());
@@ -599,89 +1150,226 @@ public class HmMq2tImpl implements HmMq2t, CommandLineRunner {  //TODO separate
         return this.subscribedTopics.keySet().stream().map(key -> this.subscribedTopics.get(key).toString()).collect(Collectors.joining("\\n ", "", ""));
     }
 
-    private void startRetransmitTask() {
-        if (this.retransmitScheduledFuture == null || this.retransmitScheduledFuture.isDone()) {
-            logger.info("Start retransmit task.");
-            this.retransmitScheduledFuture = this.threadPoolTaskScheduler.schedule(new RetransmitTask(), this.retransmitPeriodicTrigger);
-        } else {
-            logger.warn("Could not start retransmit task. Previous retransmit task was not stopped.");
+    /**
+     * Starts the retransmission timer of an outbound message that waits for
+     * acknowledgement. The first retry is sent after retransmit-delay, the
+     * delay doubles with each retry up to retransmit-delay-max.
+     *
+     * @param id the packet id of the message
+     * @param message the stored message
+     */
+    private void scheduleRetransmit(int id, MqttMessage message) {
+        this.scheduleRetransmit(new RetransmitTask(id, message, System.nanoTime(), 0), this.retransmitDelay);
+    }
+
+    private void scheduleRetransmit(RetransmitTask task, long delay) {
+        Timeout timeout = this.retransmitTimer.newTimeout(task, delay, TimeUnit.MILLISECONDS);
+        Timeout previous = this.retransmitTimeouts.getAndSet(task.id, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void cancelRetransmit(int id) {
+        Timeout timeout = this.retransmitTimeouts.getAndSet(id, null);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Restarts the retransmission timers of the stored outbound messages after
+     * the connection has been established. The stored messages are resent
+     * without delay.
+     */
+    private void resumeRetransmission() {
+        long now = System.nanoTime();
+        this.mqttAckMediator.forEach(message -> {
+            int id = getPacketId(message);
+            if (id != MqttPacketIdAllocator.NO_ID) {
+                this.scheduleRetransmit(new RetransmitTask(id, message, now, 0), 0);
+            }
+        });
+        logger.info("Retransmission has been resumed.");
+    }
+
+    /**
+     * Stops the retransmission timers. The messages stay stored until the
+     * connection is established again.
+     */
+    private void suspendRetransmission() {
+        for (int id = 1; id <= MqttPacketIdTable.MAX_PACKET_ID; id++) {
+            this.cancelRetransmit(id);
+        }
+        logger.info("Retransmission has been suspended.");
+    }
+
+    private static int getPacketId(MqttMessage message) {
+        Object variableHeader = message.variableHeader();
+        if (variableHeader instanceof MqttPublishVariableHeader publishVariableHeader) {
+            return publishVariableHeader.packetId();
+        }
+        if (variableHeader instanceof MqttMessageIdVariableHeader idVariableHeader) {
+            return idVariableHeader.messageId();
+        }
+
+        return MqttPacketIdAllocator.NO_ID;
+    }
+
+    /**
+     * Drops a message that could not be delivered within the configured amount
+     * of attempts or time. The future of the message is failed.
+     */
+    private void expire(RetransmitTask task, String reason) {
+        this.dropInFlight(task.id, task.message, reason, task.attempt);
+    }
+
+    /**
+     * Drops a stored outbound message and frees its packet id and window slot.
+     * The future of the message is failed. Does nothing if the stored message
+     * is not the given one (it has been acknowledged or replaced meanwhile).
+     * Runs on the state loop, where the acknowledgements are handled. The
+     * packet id is not returned to the allocator until the session is reset,
+     * since the broker may still hold it and a late acknowledgement would be
+     * taken for a new message with the same id.
+     */
+    private void dropInFlight(int id, MqttMessage message, String reason, int attempts) {
+        if (!this.stateLoop.inEventLoop()) {
+            this.stateLoop.execute(() -> this.dropInFlight(id, message, reason, attempts));
+            return;
+        }
+        if (this.mqttAckMediator.getMessage(id) != message) {
+            return;
+        }
+        Promise<MqttMessage> future = this.mqttAckMediator.getFuture(id);
+        this.mqttAckMediator.remove(id);
+        this.cancelRetransmit(id);
+        this.ackJournal(id);
+        this.releaseWindow(id);
+        ReferenceCountUtil.release(message);
+        logger.warn("Message id={}, type={} has been dropped. {}. Attempts={}. Packet id is kept until the session is reset.", id, message.fixedHeader().messageType(), reason, attempts);
+        if (future != null) {
+            future.tryFailure(new TimeoutException("Message id=" + id + " has not been acknowledged. " + reason + "."));
         }
     }
 
-    private void stopRetransmitTask() {
-        if (this.retransmitScheduledFuture != null && !this.retransmitScheduledFuture.isCancelled()) {
-            this.retransmitScheduledFuture.cancel(false);
-            this.retransmitScheduledFuture = null;
-            logger.info("Retransmit task has been stopped");
+    private void retransmit(MqttMessage message) {
+        MqttMessageType messageType = message.fixedHeader().messageType();
+        switch (messageType) {
+            case MqttMessageType.PUBLISH -> {
+                MqttPublishMessage initialMessage = (MqttPublishMessage) message;
+                MqttFixedHeader fixedHeader = new MqttFixedHeader(
+                        initialMessage.fixedHeader().messageType(),
+                        true, //change Dup on true
+                        initialMessage.fixedHeader().qosLevel(),
+                        initialMessage.fixedHeader().isRetain(),
+                        initialMessage.fixedHeader().remainingLength()
+                );
+                //the stored payload is shared, it is released on acknowledgement
+                ByteBuf payload = initialMessage.payload().retainedDuplicate();
+                MqttPublishMessage dupMessage = new MqttPublishMessage(fixedHeader, initialMessage.variableHeader(), payload);
+
+                writeAndFlush(dupMessage);
+                logger.info("Publish message has been retransmited. id={}, t={}, d={}, q={}, r={}",
+                        dupMessage.variableHeader().packetId(),
+                        dupMessage.variableHeader().topicName(),
+                        dupMessage.fixedHeader().isDup(),
+                        dupMessage.fixedHeader().qosLevel(),
+                        dupMessage.fixedHeader().isRetain()
+                );
+            }
+            case MqttMessageType.SUBSCRIBE -> {
+                writeAndFlush(message);
+                MqttSubscribeMessage initialMessage = (MqttSubscribeMessage) message;
+                logger.info("Subscribe message has been retransmited. id={}, q={}, r={}",
+                        initialMessage.variableHeader().messageId(),
+                        initialMessage.fixedHeader().qosLevel(),
+                        initialMessage.fixedHeader().isRetain()
+                );
+            }
+            case MqttMessageType.UNSUBSCRIBE -> {
+                writeAndFlush(message);
+                MqttUnsubscribeMessage initialMessage = (MqttUnsubscribeMessage) message;
+                logger.info("Unsubscribe message has been retransmited. id={}, q={}, r={}",
+                        initialMessage.variableHeader().messageId(),
+                        initialMessage.fixedHeader().qosLevel(),
+                        initialMessage.fixedHeader().isRetain()
+                );
+            }
+            case MqttMessageType.PUBREL -> {
+                writeAndFlush(message);
+                MqttMessageIdVariableHeader idVariableHeader = (MqttMessageIdVariableHeader) message.variableHeader();
+                logger.info("PubRel message has been retransmited. id={}, d={}, q={}, r={}",
+                        idVariableHeader.messageId(),
+                        message.fixedHeader().isDup(),
+                        message.fixedHeader().qosLevel(),
+                        message.fixedHeader().isRetain()
+                );
+            }
+            default -> {
+                logger.warn("Unexpected stored message type={}. It was not retransmited.", messageType);
+            }
         }
     }
 
-    class RetransmitTask implements Runnable {
+    /**
+     * Retransmission timer of one stored message. The task is stale and does
+     * nothing if the message has been acknowledged or replaced (e.g. PUBLISH by
+     * PUBREL) meanwhile.
+     */
+    class RetransmitTask implements TimerTask {
+
+        private final int id;
+
+        private final MqttMessage message;
+
+        private final long firstSentNanos;
+
+        private final int attempt;
+
+        RetransmitTask(int id, MqttMessage message, long firstSentNanos, int attempt) {
+            this.id = id;
+            this.message = message;
+            this.firstSentNanos = firstSentNanos;
+            this.attempt = attempt;
+        }
 
         @Override
-        public void run() {     //TODO syncronized?
-            logger.info("Start retransmission");
-            for (MqttMessage message : mqttAckMediator) {
-                logger.info("message={}", message.variableHeader());
-                MqttMessageType messageType = message.fixedHeader().messageType();
-                switch (messageType) {
-                    case MqttMessageType.PUBLISH -> {
-                        MqttPublishMessage initialMessage = (MqttPublishMessage) message;
-                        MqttQoS qos = initialMessage.fixedHeader().qosLevel();
-                        if (qos == MqttQoS.AT_LEAST_ONCE || qos == MqttQoS.EXACTLY_ONCE) {
-                            MqttFixedHeader fixedHeader = new MqttFixedHeader(
-                                    initialMessage.fixedHeader().messageType(),
-                                    true, //change Dup on true
-                                    initialMessage.fixedHeader().qosLevel(),
-                                    initialMessage.fixedHeader().isRetain(),
-                                    initialMessage.fixedHeader().remainingLength()
-                            );
-                            MqttPublishMessage dupMessage = new MqttPublishMessage(fixedHeader, initialMessage.variableHeader(), initialMessage.payload());
-
-                            writeAndFlush(dupMessage);
-                            logger.info("Publish message has been retransmited. id={}, t={}, d={}, q={}, r={}",
-                                    dupMessage.variableHeader().packetId(),
-                                    dupMessage.variableHeader().topicName(),
-                                    dupMessage.fixedHeader().isDup(),
-                                    dupMessage.fixedHeader().qosLevel(),
-                                    dupMessage.fixedHeader().isRetain()
-                            );
-                        }
-                    }
-                    case MqttMessageType.SUBSCRIBE -> {
-                        writeAndFlush(message);
-                        MqttSubscribeMessage initialMessage = (MqttSubscribeMessage) message;
-                        logger.info("Subscribe message has been retransmited. id={}, q={}, r={}",
-                                initialMessage.variableHeader().messageId(),
-                                initialMessage.fixedHeader().qosLevel(),
-                                initialMessage.fixedHeader().isRetain()
-                        );
-                    }
-                    case MqttMessageType.UNSUBSCRIBE -> {
-                        writeAndFlush(message);
-                        MqttUnsubscribeMessage initialMessage = (MqttUnsubscribeMessage) message;
-                        logger.info("Unsubscribe message has been retransmited. id={}, q={}, r={}",
-                                initialMessage.variableHeader().messageId(),
-                                initialMessage.fixedHeader().qosLevel(),
-                                initialMessage.fixedHeader().isRetain()
-                        );
-                    }
-                    case MqttMessageType.PUBREL -> {
-                        writeAndFlush(message);
-                        MqttMessageIdVariableHeader idVariableHeader = (MqttMessageIdVariableHeader) message.variableHeader();
-                        logger.info("PubRel message has been retransmited. id={}, d={}, q={}, r={}",
-                                idVariableHeader.messageId(),
-                                message.fixedHeader().isDup(),
-                                message.fixedHeader().qosLevel(),
-                                message.fixedHeader().isRetain()
-                        );
-                    }
+        public void run(Timeout timeout) {
+            if (timeout.isCancelled() || mqttAckMediator.getMessage(this.id) != this.message) {
+                return;
+            }
 
+            long age = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.firstSentNanos);
+            if (retransmitExpiry > 0 && age >= retransmitExpiry) {
+                expire(this, "Expired after " + age + " ms");
+                return;
+            }
+            if (retransmitMaxAttempts > 0 && this.attempt >= retransmitMaxAttempts) {
+                expire(this, "Max amount of attempts reached");
+                return;
+            }
+
+            Channel ch = channel;
+            if (ch == null || !ch.isActive()) {
+                logger.debug("Retransmission of message id={} is postponed. Channel is not active.", this.id);
+                retransmitTimeouts.compareAndSet(this.id, timeout, null);
+                return;
+            }
+            ch.eventLoop().execute(() -> {
+                //the message may have been acknowledged after the check above
+                if (mqttAckMediator.getMessage(this.id) == this.message) {
+                    retransmit(this.message);
                 }
+            });
 
+            long delay = Math.min(retransmitDelay << Math.min(this.attempt + 1, 20), retransmitDelayMax);
+            Timeout next = retransmitTimer.newTimeout(new RetransmitTask(this.id, this.message, this.firstSentNanos, this.attempt + 1), delay, TimeUnit.MILLISECONDS);
+            if (!retransmitTimeouts.compareAndSet(this.id, timeout, next)) {
+                //the message has been acknowledged and the id may be used by a new message
+                next.cancel();
             }
         }
-
     }
 
 }
@@ -28,6 +28,10 @@ import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.util.concurrent.Promise;
 
 /**
+ * Keeps the futures and the messages waiting for acknowledgement. Outbound and
+ * inbound messages have separate packet identifier spaces, so an inbound QoS 2
+ * PUBLISH never collides with an outbound message with the same identifier.
+ * Iteration walks the outbound messages only.
  *
  * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
  */
@@ -47,5 +51,26 @@ public interface MqttAckMediator extends Iterable<MqttMessage> {
 
     public <T extends MqttMessage> T getMessage(int key);
 
+    /**
+     * Stores an inbound message (QoS 2 PUBLISH) that waits for PUBREL.
+     *
+     * @param <T> type of the message
+     * @param key the packet identifier assigned by the broker
+     * @param future the future to complete on PUBREL
+     * @param message the received message
+     */
+    public <T extends MqttMessage> void addInbound(int key, Promise<? extends T> future, T message);
+
+    public void removeInbound(int key);
+
+    public boolean isContainInboundId(int key);
+
+    public <T extends MqttMessage> Promise<T> getInboundFuture(int key);
+
+    public <T extends MqttMessage> T getInboundMessage(int key);
+
+    /**
+     * Clears both the outbound and the inbound identifier spaces.
+     */
     public void clear();
-}
\ No newline at end of file
+}
@@ -26,14 +26,15 @@ package ru.maxeltr.homeMq2t.Mqtt;
 import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttMessage;
 import io.netty.util.concurrent.Promise;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Lock-free implementation of the mediator. Each identifier space is a table
+ * of 65536 slots indexed by packet identifier, see {@link MqttPacketIdTable}.
  *
  * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
  */
@@ -41,99 +42,173 @@ public class MqttAckMediatorImpl implements MqttAckMediator {
 
     private static final Logger logger = LoggerFactory.getLogger(MqttAckMediatorImpl.class);
 
-    private Promise<MqttConnAckMessage> connectFuture;
+    private volatile Promise<MqttConnAckMessage> connectFuture;
 
-    private final Map<Integer, Promise<? extends MqttMessage>> futures = new LinkedHashMap<>();
+    private final MqttPacketIdTable outbound = new MqttPacketIdTable();
 
-    private final Map<Integer, MqttMessage> messages = new LinkedHashMap<>();
+    private final MqttPacketIdTable inbound = new MqttPacketIdTable();
 
     @Override
     public <T extends MqttMessage> Promise<T> getFuture(int key) {
-        synchronized (this) {
-            @SuppressWarnings("unchecked")
-            var future = (Promise<T>) this.futures.get(key);
-            return future;
-        }
+        return this.getFuture(this.outbound, key);
     }
 
     @Override
     public <T extends MqttMessage> T getMessage(int key) {
-        synchronized (this) {
-            @SuppressWarnings("unchecked")
-            var message = (T) this.messages.get(key);
-            return message;
-        }
+        return this.getMessage(this.outbound, key);
     }
 
     @Override
     public boolean isContainId(int key) {
-        synchronized (this) {
-            return this.messages.containsKey(key) || this.futures.containsKey(key);
-        }
+        return MqttPacketIdTable.isValidId(key) && this.outbound.get(key) != null;
     }
 
     @Override
     public <T extends MqttMessage> void add(int key, Promise<? extends T> future, T message) {
-        synchronized (this) {
-            int futuresSize = futures.size();
-            int messagesSize = messages.size();
-            if (futuresSize >= 65535 || messagesSize >= 65535) {
-                logger.error("Error. Overflow. Amount futures={}. Amount messages={}", futuresSize, messagesSize);
-                //TODO
-            }
-            this.futures.put(key, future);
-            logger.debug("Future was added key={} future={}. Amount futures={}", key, future, futuresSize);
-            this.messages.put(key, message);
-            logger.debug("Message was added key={} message={}. Amount messages={}", key, message.variableHeader(), messagesSize);
-        }
+        this.add(this.outbound, "outbound", key, future, message);
     }
 
     @Override
     public void remove(int key) {
-        synchronized (this) {
-            Promise<? extends MqttMessage> future = this.futures.remove(key);
-            if (future != null) {
-                logger.debug("Future was removed key={}. Amount futures={}. Future={}", key, futures.size(), future);
-            } else {
-                logger.debug("No future found key={}. Amount futures={}.", key, futures.size());
-            }
-            MqttMessage message = this.messages.remove(key);
-            if (message != null) {
-                logger.debug("Message was removed key={}. Amount messages={}. Message={}", key, messages.size(), message.variableHeader());
-            } else {
-                logger.debug("No message found key={}. Amount messages={}.", key, messages.size());
-            }
+        this.remove(this.outbound, "outbound", key);
+    }
+
+    @Override
+    public <T extends MqttMessage> Promise<T> getInboundFuture(int key) {
+        return this.getFuture(this.inbound, key);
+    }
+
+    @Override
+    public <T extends MqttMessage> T getInboundMessage(int key) {
+        return this.getMessage(this.inbound, key);
+    }
+
+    @Override
+    public boolean isContainInboundId(int key) {
+        return MqttPacketIdTable.isValidId(key) && this.inbound.get(key) != null;
+    }
+
+    @Override
+    public <T extends MqttMessage> void addInbound(int key, Promise<? extends T> future, T message) {
+        this.add(this.inbound, "inbound", key, future, message);
+    }
+
+    @Override
+    public void removeInbound(int key) {
+        this.remove(this.inbound, "inbound", key);
+    }
+
+    private <T extends MqttMessage> Promise<T> getFuture(MqttPacketIdTable table, int key) {
+        if (!MqttPacketIdTable.isValidId(key)) {
+            return null;
+        }
+        MqttPacketIdTable.Entry entry = table.get(key);
+        @SuppressWarnings("unchecked")
+        var future = entry != null ? (Promise<T>) entry.future() : null;
+        return future;
+    }
+
+    private <T extends MqttMessage> T getMessage(MqttPacketIdTable table, int key) {
+        if (!MqttPacketIdTable.isValidId(key)) {
+            return null;
+        }
+        MqttPacketIdTable.Entry entry = table.get(key);
+        @SuppressWarnings("unchecked")
+        var message = entry != null ? (T) entry.message() : null;
+        return message;
+    }
+
+    private void add(MqttPacketIdTable table, String space, int key, Promise<? extends MqttMessage> future, MqttMessage message) {
+        if (!MqttPacketIdTable.isValidId(key)) {
+            logger.error("Error. Invalid {} packet id={}. Message={} was not stored.", space, key, message.variableHeader());
+            return;
+        }
+        MqttPacketIdTable.Entry previous = table.put(key, future, message);
+        if (previous != null) {
+            logger.warn("Stored {} message was replaced key={}. Previous message={}.", space, key, previous.message().variableHeader());
+        }
+        logger.debug("Message and future were added to {} space key={} message={}. Amount messages={}", space, key, message.variableHeader(), table.size());
+    }
+
+    private void remove(MqttPacketIdTable table, String space, int key) {
+        if (!MqttPacketIdTable.isValidId(key)) {
+            logger.debug("No message found in {} space. Invalid key={}.", space, key);
+            return;
+        }
+        MqttPacketIdTable.Entry previous = table.remove(key);
+        if (previous != null) {
+            logger.debug("Message and future were removed from {} space key={}. Amount messages={}. Message={}", space, key, table.size(), previous.message().variableHeader());
+        } else {
+            logger.debug("No message found in {} space key={}. Amount messages={}.", space, key, table.size());
         }
     }
 
     @Override
     public void setConnectFuture(Promise<MqttConnAckMessage> future) {
-        synchronized (this) {
-            this.connectFuture = future;
-            logger.debug("Connect future was set: {}.", future);
-        }
+        this.connectFuture = future;
+        logger.debug("Connect future was set: {}.", future);
     }
 
     @Override
     public Promise<MqttConnAckMessage> getConnectFuture() {
-        synchronized (this) {
-            return this.connectFuture;
-        }
+        return this.connectFuture;
     }
 
+    /**
+     * Returns an iterator over the outbound messages. The iterator reads the
+     * slots in place and is weakly consistent.
+     *
+     * @return an iterator over the outbound messages
+     */
     @Override
     public Iterator<MqttMessage> iterator() {
-        synchronized (this) {
-            return new ArrayList<>(this.messages.values()).iterator();
-        }
+        return new Iterator<>() {
+
+            private int id = 0;
+
+            private MqttMessage next = this.advance();
+
+            private MqttMessage advance() {
+                while (++this.id <= MqttPacketIdTable.MAX_PACKET_ID) {
+                    MqttPacketIdTable.Entry entry = outbound.get(this.id);
+                    if (entry != null) {
+                        return entry.message();
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public MqttMessage next() {
+                if (this.next == null) {
+                    throw new NoSuchElementException();
+                }
+                MqttMessage current = this.next;
+                this.next = this.advance();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Performs the action for each outbound message without copying the table.
+     *
+     * @param action the action to perform on each outbound message
+     */
+    @Override
+    public void forEach(Consumer<? super MqttMessage> action) {
+        this.outbound.forEachMessage(action);
     }
 
     @Override
     public void clear() {
-        synchronized (this) {
-            this.messages.clear();
-            this.futures.clear();
-            logger.debug("AckMediator clear.");
-        }
+        this.outbound.clear();
+        this.inbound.clear();
+        logger.debug("AckMediator clear.");
     }
 }
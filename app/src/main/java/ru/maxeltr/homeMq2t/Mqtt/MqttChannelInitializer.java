@@ -62,11 +62,17 @@ public class MqttChannelInitializer extends ChannelInitializer<SocketChannel> im
     @Value("${keep-alive-timer:20}")
     private int keepAliveTimer;
 
+    @Value("${protocol-version:4}")
+    private int protocolVersion;
+
     @Override
     protected void initChannel(SocketChannel ch) throws Exception {
         logger.debug("Initialize channel {}", ch.toString());
         ch.pipeline().addLast("mqttDecoder", this.createMqttDecoder());
         ch.pipeline().addLast("mqttEncoder", this.createMqttEncoder());
+        if (this.protocolVersion < 5) {
+            ch.pipeline().addLast("mqttPublishEncoder", MqttPublishEncoder.INSTANCE);
+        }
         ch.pipeline().addLast("idleStateHandler", this.createIdleStateHandler());
         ch.pipeline().addLast(MqttPingScheduleHandler.NAME, this.createMqttPingHandler());
         ch.pipeline().addLast("mqttConnectHandler", this.createMqttConnectHandler());
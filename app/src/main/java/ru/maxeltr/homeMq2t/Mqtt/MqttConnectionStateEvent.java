@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published on every change of the connection state. The event is published on
+ * the event loop of the MQTT client, so listeners must not block. Use an
+ * asynchronous listener for long running reactions.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class MqttConnectionStateEvent extends ApplicationEvent {
+
+    private final MqttConnectionState previousState;
+
+    private final MqttConnectionState state;
+
+    private final boolean reconnect;
+
+    private final int attempt;
+
+    public MqttConnectionStateEvent(Object source, MqttConnectionState previousState, MqttConnectionState state, boolean reconnect, int attempt) {
+        super(source);
+        this.previousState = previousState;
+        this.state = state;
+        this.reconnect = reconnect;
+        this.attempt = attempt;
+    }
+
+    public MqttConnectionState getPreviousState() {
+        return previousState;
+    }
+
+    public MqttConnectionState getState() {
+        return state;
+    }
+
+    /**
+     * Returns true if the state change belongs to an automatic reconnection,
+     * i.e. it was not requested by the user.
+     *
+     * @return true if the state change belongs to an automatic reconnection
+     */
+    public boolean isReconnect() {
+        return reconnect;
+    }
+
+    /**
+     * Returns the number of the current reconnection attempt, 0 if the client
+     * is not reconnecting.
+     *
+     * @return the number of the reconnection attempt
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    @Override
+    public String toString() {
+        return "MqttConnectionStateEvent{" + "previousState=" + previousState + ", state=" + state + ", reconnect=" + reconnect + ", attempt=" + attempt + '}';
+    }
+}
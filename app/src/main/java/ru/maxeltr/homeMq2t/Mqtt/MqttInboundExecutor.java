@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Striped executor for inbound PUBLISH messages. Each stripe is a single
+ * thread with its own queue and a message is always handled by the stripe
+ * selected by its topic. Messages of one topic are therefore handled in the
+ * order they were received, while messages of different topics are handled
+ * in parallel.
+ * <p>
+ * The executor also applies back-pressure to the MQTT connection. When the
+ * amount of pending messages or their payload bytes pass the high-water mark,
+ * auto read of the channel is turned off, so the overload is pushed back to
+ * TCP and the broker instead of the heap. Auto read is turned on again when
+ * both amounts fall below the low-water marks. The counters are exposed over
+ * JMX.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+@ManagedResource(objectName = "ru.maxeltr.homeMq2t:type=MqttInboundExecutor", description = "Inbound MQTT message executor")
+public class MqttInboundExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttInboundExecutor.class);
+
+    /**
+     * Amount of stripes, 0 - the amount of available processors.
+     */
+    @Value("${inbound-stripes:0}")
+    private int stripeCount;
+
+    @Value("${inbound-high-water-messages:1000}")
+    private long highWaterMessages;
+
+    @Value("${inbound-low-water-messages:500}")
+    private long lowWaterMessages;
+
+    @Value("${inbound-high-water-bytes:67108864}")
+    private long highWaterBytes;
+
+    @Value("${inbound-low-water-bytes:33554432}")
+    private long lowWaterBytes;
+
+    private ExecutorService[] stripes;
+
+    private final AtomicLong pendingMessages = new AtomicLong();
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    /**
+     * Channels with auto read turned off. Changes of the set and of auto read
+     * are made under the lock of the executor, so a resume never runs between
+     * them.
+     */
+    private final Set<Channel> pausedChannels = new HashSet<>();
+
+    private volatile boolean throttled;
+
+    private final AtomicLong throttleCount = new AtomicLong();
+
+    private final AtomicLong throttledTime = new AtomicLong();
+
+    private long throttleStart;
+
+    @PostConstruct
+    public void postConstruct() {
+        int count = this.stripeCount > 0 ? this.stripeCount : Runtime.getRuntime().availableProcessors();
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("Mq2tInbound", true);
+        this.stripes = new ExecutorService[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        }
+        logger.info("Inbound executor has been started. Stripes={}.", count);
+    }
+
+    /**
+     * Executes the task on the stripe of the topic. If the pending amounts
+     * pass a high-water mark after that, auto read of the channel is turned
+     * off.
+     *
+     * @param channel the channel the message was read from
+     * @param topic the topic of the message
+     * @param bytes the size of the message payload
+     * @param task the task that handles the message
+     * @throws RejectedExecutionException if the executor has been shut down
+     */
+    public void execute(Channel channel, String topic, int bytes, Runnable task) {
+        int hash = topic.hashCode();
+        ExecutorService stripe = this.stripes[Math.floorMod(hash ^ (hash >>> 16), this.stripes.length)];
+        this.pendingMessages.incrementAndGet();
+        this.pendingBytes.addAndGet(bytes);
+        try {
+            stripe.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    this.completed(bytes);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.completed(bytes);
+            throw ex;
+        }
+
+        if (this.isAboveHighWater()) {
+            this.pause(channel);
+        }
+    }
+
+    private void completed(int bytes) {
+        this.pendingMessages.decrementAndGet();
+        this.pendingBytes.addAndGet(-bytes);
+        if (this.throttled && this.isBelowLowWater()) {
+            this.resume();
+        }
+    }
+
+    private boolean isAboveHighWater() {
+        return this.pendingMessages.get() >= this.highWaterMessages || this.pendingBytes.get() >= this.highWaterBytes;
+    }
+
+    private boolean isBelowLowWater() {
+        return this.pendingMessages.get() <= this.lowWaterMessages && this.pendingBytes.get() <= this.lowWaterBytes;
+    }
+
+    private void pause(Channel channel) {
+        synchronized (this) {
+            if (!this.pausedChannels.add(channel)) {
+                return;
+            }
+            if (!this.throttled) {
+                this.throttled = true;
+                this.throttleStart = System.nanoTime();
+                this.throttleCount.incrementAndGet();
+            }
+            channel.config().setAutoRead(false);
+        }
+        logger.warn("Inbound queue is above high-water mark, reading from the channel has been paused. Pending messages={}, bytes={}.",
+                this.pendingMessages.get(), this.pendingBytes.get());
+
+        //the queue may have been drained before the flag was seen by the stripes
+        if (this.isBelowLowWater()) {
+            this.resume();
+        }
+    }
+
+    private void resume() {
+        synchronized (this) {
+            if (!this.throttled || !this.isBelowLowWater()) {
+                return;
+            }
+            this.throttled = false;
+            this.throttledTime.addAndGet(System.nanoTime() - this.throttleStart);
+            for (Channel channel : this.pausedChannels) {
+                channel.config().setAutoRead(true);
+            }
+            this.pausedChannels.clear();
+        }
+        logger.info("Inbound queue is below low-water mark, reading from the channel has been resumed. Pending messages={}, bytes={}.",
+                this.pendingMessages.get(), this.pendingBytes.get());
+    }
+
+    @ManagedAttribute(description = "Amount of messages waiting for handling")
+    public long getPendingMessages() {
+        return this.pendingMessages.get();
+    }
+
+    @ManagedAttribute(description = "Payload bytes of messages waiting for handling")
+    public long getPendingBytes() {
+        return this.pendingBytes.get();
+    }
+
+    @ManagedAttribute(description = "Whether reading from the MQTT connection is paused")
+    public boolean isThrottled() {
+        return this.throttled;
+    }
+
+    @ManagedAttribute(description = "Amount of times reading from the MQTT connection has been paused")
+    public long getThrottleCount() {
+        return this.throttleCount.get();
+    }
+
+    @ManagedAttribute(description = "Total time in ms reading from the MQTT connection has been paused")
+    public long getThrottledTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.throttledTime.get());
+    }
+
+    public void shutdown() {
+        if (this.stripes == null) {
+            return;
+        }
+        for (ExecutorService stripe : this.stripes) {
+            stripe.shutdown();
+        }
+        logger.info("Inbound executor has been stopped.");
+    }
+}
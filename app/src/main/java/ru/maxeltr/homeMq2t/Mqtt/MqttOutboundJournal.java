@@ -0,0 +1,615 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.netty.util.internal.PlatformDependent;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Append-only journal of outbound publish messages. The journal is a sequence
+ * of memory-mapped segment files of journal-segment-size bytes. A message is
+ * appended before it is sent and acknowledged when the broker has
+ * acknowledged it, so the messages that have not been delivered survive a
+ * broker outage and a restart of the application and are replayed in order
+ * after the connection has been established.
+ * <p>
+ * Record layout: length (int), crc32c (int) of the rest of the record, type
+ * (byte), sequence number (long) and, for a publish record, qos (byte), retain
+ * (byte), topic length (short), topic, payload length (int), payload. A state
+ * record holds the packet id (int) the message has been sent with and whether
+ * PUBREL has been sent (byte), so a message of a persistent session is
+ * resent with the same packet id after a restart. A zero length marks the end
+ * of the written part of a segment.
+ * <p>
+ * The oldest segments are deleted when all their messages have been
+ * acknowledged. When the journal reaches journal-max-size, the messages that
+ * are still alive in the oldest segment are copied to the head of the journal
+ * and the segment is deleted. If that does not free space, the message is not
+ * journaled.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class MqttOutboundJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttOutboundJournal.class);
+
+    /**
+     * Returned when a message has not been journaled. Sequence numbers start
+     * from 1.
+     */
+    public static final long NO_SEQ = 0;
+
+    public static final int NO_PACKET_ID = 0;
+
+    private static final byte PUBLISH = 1;
+
+    private static final byte ACK = 2;
+
+    private static final byte STATE = 3;
+
+    private static final int HEADER_SIZE = 8;   //length and crc
+
+    private static final int ACK_SIZE = 1 + 8;
+
+    private static final int STATE_SIZE = 1 + 8 + 4 + 1;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    @Value("${journal-enabled:false}")
+    private boolean enabled;
+
+    @Value("${journal-dir:journal}")
+    private String dir;
+
+    @Value("${journal-segment-size:4194304}")
+    private int segmentSize;
+
+    @Value("${journal-max-size:67108864}")
+    private long maxSize;
+
+    @Value("${journal-fsync:false}")
+    private boolean fsync;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private final TreeMap<Long, Entry> live = new TreeMap<>();
+
+    private final TreeSet<Long> undispatched = new TreeSet<>();
+
+    private final TreeMap<Long, InFlight> inFlight = new TreeMap<>();
+
+    private long nextSeq = 1;
+
+    private long nextSegment = 1;
+
+    private int maxSegments;
+
+    @PostConstruct
+    public synchronized void open() {
+        if (!this.enabled) {
+            logger.info("Outbound journal is disabled.");
+            return;
+        }
+        this.maxSegments = (int) Math.max(2, this.maxSize / this.segmentSize);
+        try {
+            Path path = Paths.get(this.dir);
+            Files.createDirectories(path);
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(path)) {
+                files = stream.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                        .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .toList();
+            }
+            for (Path file : files) {
+                this.recover(file);
+            }
+            if (this.segments.isEmpty()) {
+                this.segments.addLast(this.newSegment());
+            }
+            this.deleteAcknowledgedSegments();
+        } catch (IOException ex) {
+            logger.error("Could not open outbound journal in dir={}. Journal is disabled.", this.dir, ex);
+            this.closeSegments();
+            this.live.clear();
+            this.undispatched.clear();
+            this.inFlight.clear();
+            this.enabled = false;
+            return;
+        }
+        this.inFlight.keySet().retainAll(this.live.keySet());
+        this.undispatched.addAll(this.live.keySet());
+        logger.info("Outbound journal has been opened. Dir={}, segments={}, messages to replay={}, next seq={}.", this.dir, this.segments.size(), this.live.size(), this.nextSeq);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the publish message to the journal. The payload is copied, its
+     * reader index is not changed.
+     *
+     * @param topic the topic of the message
+     * @param qos the qos of the message
+     * @param retain the retain flag of the message
+     * @param payload the payload of the message
+     * @param dispatched false if the message has to be sent on replay, true if
+     * the caller sends it itself
+     * @return the sequence number of the message or {@link #NO_SEQ} if the
+     * message has not been journaled
+     */
+    public synchronized long append(String topic, MqttQoS qos, boolean retain, ByteBuf payload, boolean dispatched) {
+        if (!this.enabled) {
+            return NO_SEQ;
+        }
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int payloadSize = payload.readableBytes();
+        int size = HEADER_SIZE + 1 + 8 + 1 + 1 + 2 + topicBytes.length + 4 + payloadSize;
+        Segment segment = this.reserve(size);
+        if (segment == null) {
+            logger.warn("Message t={} has not been journaled. Size={}, journal messages={}, segments={}.", topic, size, this.live.size(), this.segments.size());
+            return NO_SEQ;
+        }
+
+        long seq = this.nextSeq++;
+        ByteBuffer buffer = segment.buffer;
+        int offset = segment.position;
+        buffer.position(offset + HEADER_SIZE);
+        buffer.put(PUBLISH).putLong(seq).put((byte) qos.value()).put((byte) (retain ? 1 : 0));
+        buffer.putShort((short) topicBytes.length).put(topicBytes).putInt(payloadSize);
+        payload.getBytes(payload.readerIndex(), buffer.duplicate().limit(buffer.position() + payloadSize));
+        segment.commit(offset, size);
+        if (this.fsync) {
+            segment.buffer.force(offset, size);
+        }
+
+        this.live.put(seq, new Entry(segment, offset, size));
+        segment.live++;
+        if (!dispatched) {
+            this.undispatched.add(seq);
+        }
+
+        return seq;
+    }
+
+    /**
+     * Marks the message as delivered or given up. It will not be replayed.
+     *
+     * @param seq the sequence number of the message
+     */
+    public synchronized void ack(long seq) {
+        Entry entry = this.live.remove(seq);
+        if (entry == null) {
+            return;
+        }
+        this.undispatched.remove(seq);
+        this.inFlight.remove(seq);
+        entry.segment.live--;
+
+        Segment segment = this.reserve(HEADER_SIZE + ACK_SIZE);
+        if (segment == null) {
+            //there is no space for the ack record; the message may be replayed once more after restart
+            logger.warn("Ack of journal message seq={} has not been written. Journal is full.", seq);
+        } else {
+            int offset = segment.position;
+            segment.buffer.position(offset + HEADER_SIZE);
+            segment.buffer.put(ACK).putLong(seq);
+            segment.commit(offset, HEADER_SIZE + ACK_SIZE);
+            if (this.fsync) {
+                segment.buffer.force(offset, HEADER_SIZE + ACK_SIZE);
+            }
+        }
+        this.deleteAcknowledgedSegments();
+    }
+
+    /**
+     * Records the packet id the message has been sent with, or that PUBREL
+     * has been sent for it.
+     *
+     * @param seq the sequence number of the message
+     * @param packetId the packet id of the message
+     * @param released true if PUBREL has been sent
+     */
+    public synchronized void setInFlight(long seq, int packetId, boolean released) {
+        if (!this.enabled || !this.live.containsKey(seq)) {
+            return;
+        }
+        InFlight state = new InFlight(packetId, released);
+        this.inFlight.put(seq, state);
+        Segment segment = this.reserve(HEADER_SIZE + STATE_SIZE);
+        if (segment == null) {
+            //the message is sent as a new one after restart
+            logger.warn("State of journal message seq={} has not been written. Journal is full.", seq);
+            return;
+        }
+        this.writeState(segment, seq, state);
+    }
+
+    /**
+     * Takes the messages that had been sent before a restart and marks them
+     * dispatched. The records carry the packet id and the PUBREL flag.
+     *
+     * @return the messages in order of sequence numbers
+     */
+    public synchronized List<Record> pollInFlight() {
+        List<Record> records = new ArrayList<>();
+        for (Long seq : this.inFlight.keySet()) {
+            if (this.undispatched.remove(seq)) {
+                records.add(this.read(seq, this.live.get(seq)));
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Takes the oldest message that has to be sent and marks it dispatched.
+     *
+     * @return the oldest undispatched message or null if there is none
+     */
+    public synchronized Record pollUndispatched() {
+        Long seq = this.undispatched.pollFirst();
+        if (seq == null) {
+            return null;
+        }
+
+        return this.read(seq, this.live.get(seq));
+    }
+
+    public synchronized boolean hasUndispatched() {
+        return !this.undispatched.isEmpty();
+    }
+
+    /**
+     * Returns the message to the replay queue, e.g. if it could not be sent.
+     *
+     * @param seq the sequence number of the message
+     */
+    public synchronized void requeue(long seq) {
+        if (this.live.containsKey(seq)) {
+            this.undispatched.add(seq);
+        }
+    }
+
+    /**
+     * Returns all messages that have not been acknowledged to the replay
+     * queue, e.g. when the session state has been dropped. Their packet ids
+     * are forgotten.
+     */
+    public synchronized void requeueAll() {
+        this.undispatched.addAll(this.live.keySet());
+        this.inFlight.clear();
+    }
+
+    public synchronized int size() {
+        return this.live.size();
+    }
+
+    public synchronized void close() {
+        if (!this.enabled) {
+            return;
+        }
+        for (Segment segment : this.segments) {
+            segment.buffer.force();
+        }
+        this.closeSegments();
+        logger.info("Outbound journal has been closed. Messages left={}.", this.live.size());
+    }
+
+    /**
+     * Returns the segment with at least size free bytes. Rolls to a new
+     * segment and compacts the journal if needed.
+     *
+     * @return the segment or null if the journal is full or the record does
+     * not fit in a segment
+     */
+    private Segment reserve(int size) {
+        if (size + 4 > this.segmentSize) {
+            return null;
+        }
+        Segment head = this.segments.peekLast();
+        if (head.remaining() >= size) {
+            return head;
+        }
+
+        this.deleteAcknowledgedSegments();
+        try {
+            if (this.segments.size() >= this.maxSegments && !this.compact(size)) {
+                return null;
+            }
+            head = this.segments.peekLast();
+            if (head.remaining() >= size) {
+                return head;
+            }
+            head.buffer.force();
+            Segment segment = this.newSegment();
+            this.segments.addLast(segment);
+            logger.debug("Journal segment={} has been created.", segment.path.getFileName());
+
+            return segment;
+        } catch (IOException ex) {
+            logger.error("Could not roll journal segment.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Moves the messages that are alive in the oldest segment to a new segment
+     * and deletes the oldest segment.
+     *
+     * @return true if there is space for a record of the given size
+     */
+    private boolean compact(int size) throws IOException {
+        Segment oldest = this.segments.peekFirst();
+        if (oldest == this.segments.peekLast()) {
+            return false;
+        }
+        List<Map.Entry<Long, Entry>> moving = new ArrayList<>();
+        int movingBytes = 0;
+        for (Map.Entry<Long, Entry> e : this.live.entrySet()) {
+            if (e.getValue().segment == oldest) {
+                moving.add(e);
+                movingBytes += e.getValue().size;
+            }
+        }
+        //state records of the oldest segment are written again
+        movingBytes += this.inFlight.size() * (HEADER_SIZE + STATE_SIZE);
+        if (movingBytes + size + 4 > this.segmentSize) {
+            return false;
+        }
+
+        Segment segment = this.newSegment();
+        this.segments.addLast(segment);
+        for (Map.Entry<Long, Entry> e : moving) {
+            Entry entry = e.getValue();
+            int offset = segment.position;
+            ByteBuffer src = oldest.buffer.duplicate();
+            src.limit(entry.offset + entry.size).position(entry.offset);
+            segment.buffer.position(offset);
+            segment.buffer.put(src);
+            segment.position = offset + entry.size;
+            e.setValue(new Entry(segment, offset, entry.size));
+            segment.live++;
+            oldest.live--;
+        }
+        if (segment.position + 4 <= segment.buffer.capacity()) {
+            segment.buffer.putInt(segment.position, 0);
+        }
+        for (Map.Entry<Long, InFlight> e : this.inFlight.entrySet()) {
+            this.writeState(segment, e.getKey(), e.getValue());
+        }
+        segment.buffer.force();
+        this.segments.pollFirst();
+        oldest.delete();
+        logger.info("Journal has been compacted. Moved messages={}, bytes={}.", moving.size(), movingBytes);
+
+        return true;
+    }
+
+    /**
+     * Deletes the oldest segments as long as they have no alive messages. Only
+     * a prefix of the journal is deleted, so that ack records are never lost
+     * while the message they acknowledge is still on disk.
+     */
+    private void deleteAcknowledgedSegments() {
+        while (this.segments.size() > 1 && this.segments.peekFirst().live == 0) {
+            Segment segment = this.segments.pollFirst();
+            segment.delete();
+            logger.debug("Journal segment={} has been deleted.", segment.path.getFileName());
+        }
+    }
+
+    private void writeState(Segment segment, long seq, InFlight state) {
+        int offset = segment.position;
+        segment.buffer.position(offset + HEADER_SIZE);
+        segment.buffer.put(STATE).putLong(seq).putInt(state.packetId()).put((byte) (state.released() ? 1 : 0));
+        segment.commit(offset, HEADER_SIZE + STATE_SIZE);
+        if (this.fsync) {
+            segment.buffer.force(offset, HEADER_SIZE + STATE_SIZE);
+        }
+    }
+
+    private void recover(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        try {
+            long number = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            this.nextSegment = Math.max(this.nextSegment, number + 1);
+        } catch (NumberFormatException ex) {
+            logger.warn("Unexpected journal segment name={}. Skipped.", name);
+            return;
+        }
+        Segment segment;
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = new Segment(file, fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileChannel.size()));
+        }
+        ByteBuffer buffer = segment.buffer;
+        CRC32C crc = new CRC32C();
+        int position = 0;
+        int records = 0;
+        while (position + HEADER_SIZE + ACK_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < ACK_SIZE || position + HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.duplicate().limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                logger.warn("Journal segment={} has a broken record at offset={}. The rest of the segment is skipped.", file.getFileName(), position);
+                break;
+            }
+            byte type = buffer.get(position + HEADER_SIZE);
+            long seq = buffer.getLong(position + HEADER_SIZE + 1);
+            if (type == PUBLISH) {
+                this.live.put(seq, new Entry(segment, position, HEADER_SIZE + length));
+            } else if (type == ACK) {
+                this.live.remove(seq);
+                this.inFlight.remove(seq);
+            } else if (type == STATE) {
+                int packetId = buffer.getInt(position + HEADER_SIZE + 1 + 8);
+                boolean released = buffer.get(position + HEADER_SIZE + 1 + 8 + 4) != 0;
+                this.inFlight.put(seq, new InFlight(packetId, released));
+            }
+            this.nextSeq = Math.max(this.nextSeq, seq + 1);
+            position += HEADER_SIZE + length;
+            ++records;
+        }
+        segment.position = position;
+        this.segments.addLast(segment);
+
+        for (Segment s : this.segments) {
+            s.live = 0;
+        }
+        for (Entry entry : this.live.values()) {
+            entry.segment.live++;
+        }
+        logger.debug("Journal segment={} has been recovered. Records={}.", file.getFileName(), records);
+    }
+
+    private Segment newSegment() throws IOException {
+        Path file = Paths.get(this.dir, String.format("%s%020d%s", SEGMENT_PREFIX, this.nextSegment++, SEGMENT_SUFFIX));
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(file, fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize));
+        }
+    }
+
+    private Record read(long seq, Entry entry) {
+        ByteBuffer buffer = entry.segment.buffer.duplicate();
+        buffer.position(entry.offset + HEADER_SIZE + 1 + 8);
+        MqttQoS qos = MqttQoS.valueOf(buffer.get());
+        boolean retain = buffer.get() != 0;
+        byte[] topic = new byte[buffer.getShort() & 0xffff];
+        buffer.get(topic);
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.get(payload);
+
+        InFlight state = this.inFlight.get(seq);
+        return new Record(seq, new String(topic, StandardCharsets.UTF_8), qos, retain, payload,
+                state == null ? NO_PACKET_ID : state.packetId(), state != null && state.released());
+    }
+
+    private void closeSegments() {
+        for (Iterator<Segment> it = this.segments.iterator(); it.hasNext();) {
+            PlatformDependent.freeDirectBuffer(it.next().buffer);
+            it.remove();
+        }
+    }
+
+    /**
+     * Message read from the journal. The packet id is {@link #NO_PACKET_ID}
+     * if the message has not been sent in the previous run.
+     */
+    public record Record(long seq, String topic, MqttQoS qos, boolean retain, byte[] payload, int packetId, boolean released) {
+
+    }
+
+    private record InFlight(int packetId, boolean released) {
+
+    }
+
+    private static final class Entry {
+
+        private final Segment segment;
+
+        private final int offset;
+
+        private final int size;
+
+        Entry(Segment segment, int offset, int size) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+
+        private final MappedByteBuffer buffer;
+
+        private int position;
+
+        private int live;
+
+        private final CRC32C crc = new CRC32C();
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return this.buffer.capacity() - this.position - 4;     //keep space for the end mark
+        }
+
+        /**
+         * Writes the length and the crc of the record whose body has been put
+         * at offset, and the end mark after it.
+         */
+        void commit(int offset, int size) {
+            this.crc.reset();
+            this.crc.update(this.buffer.duplicate().limit(offset + size).position(offset + HEADER_SIZE));
+            this.buffer.putInt(offset + size, 0);
+            this.buffer.putInt(offset + 4, (int) this.crc.getValue());
+            this.buffer.putInt(offset, size - HEADER_SIZE);
+            this.position = offset + size;
+        }
+
+        void delete() {
+            PlatformDependent.freeDirectBuffer(this.buffer);
+            try {
+                Files.deleteIfExists(this.path);
+            } catch (IOException ex) {
+                logger.warn("Could not delete journal segment={}.", this.path, ex);
+            }
+        }
+    }
+}
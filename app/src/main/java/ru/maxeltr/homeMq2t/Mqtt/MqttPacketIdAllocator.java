@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocator of MQTT packet identifiers. Used identifiers are kept in a bitset
+ * of 65536 bits that is changed with CAS, the amount of free identifiers is
+ * kept in a semaphore. Allocation and release take constant time and may be
+ * called from any thread. When all identifiers are in use, the caller waits for
+ * a free one up to the given timeout.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+final class MqttPacketIdAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttPacketIdAllocator.class);
+
+    /**
+     * Returned when no identifier could be allocated. Zero is not a valid
+     * packet identifier.
+     */
+    static final int NO_ID = 0;
+
+    static final int CAPACITY = MqttPacketIdTable.MAX_PACKET_ID;
+
+    private static final int WORDS = (MqttPacketIdTable.MAX_PACKET_ID + 1) / Long.SIZE;
+
+    private final AtomicLongArray used = new AtomicLongArray(WORDS);
+
+    private final Semaphore free = new Semaphore(CAPACITY);
+
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    MqttPacketIdAllocator() {
+        this.used.set(0, 1L);   //id 0 is reserved
+    }
+
+    /**
+     * Allocates a free packet identifier.
+     *
+     * @param timeout the maximum time to wait for a free identifier in
+     * milliseconds, 0 to return immediately
+     * @return the allocated identifier or {@link #NO_ID} if all identifiers are
+     * in use
+     */
+    int acquire(long timeout) {
+        try {
+            if (!this.free.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                return NO_ID;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for a free packet id.");
+            return NO_ID;
+        }
+
+        //The permit guarantees that at least one bit is clear.
+        int start = this.cursor.get();
+        for (int i = 0;; i++) {
+            int word = (start + i) & (WORDS - 1);
+            long bits = this.used.get(word);
+            while (bits != -1L) {
+                int bit = Long.numberOfTrailingZeros(~bits);
+                if (this.used.compareAndSet(word, bits, bits | (1L << bit))) {
+                    this.cursor.set(word);
+                    return word * Long.SIZE + bit;
+                }
+                bits = this.used.get(word);
+            }
+        }
+    }
+
+    /**
+     * Allocates the given packet identifier, e.g. to restore a message that
+     * has been sent before a restart.
+     *
+     * @param id the identifier to allocate
+     * @return true if the identifier was free and has been allocated
+     */
+    boolean reserve(int id) {
+        if (!MqttPacketIdTable.isValidId(id) || !this.free.tryAcquire()) {
+            return false;
+        }
+        int word = id / Long.SIZE;
+        long mask = 1L << (id % Long.SIZE);
+        long bits;
+        do {
+            bits = this.used.get(word);
+            if ((bits & mask) != 0) {
+                this.free.release();
+                return false;
+            }
+        } while (!this.used.compareAndSet(word, bits, bits | mask));
+
+        return true;
+    }
+
+    /**
+     * Returns the identifier to the allocator.
+     *
+     * @param id the identifier to release
+     */
+    void release(int id) {
+        if (!MqttPacketIdTable.isValidId(id)) {
+            logger.warn("Could not release invalid packet id={}.", id);
+            return;
+        }
+        int word = id / Long.SIZE;
+        long mask = 1L << (id % Long.SIZE);
+        long bits;
+        do {
+            bits = this.used.get(word);
+            if ((bits & mask) == 0) {
+                logger.debug("Packet id={} is free already.", id);
+                return;
+            }
+        } while (!this.used.compareAndSet(word, bits, bits & ~mask));
+        this.free.release();
+    }
+
+    /**
+     * Returns all allocated identifiers to the allocator.
+     */
+    void releaseAll() {
+        int released = 0;
+        for (int word = 0; word < WORDS; word++) {
+            long bits = this.used.getAndSet(word, word == 0 ? 1L : 0L);
+            released += Long.bitCount(word == 0 ? bits & ~1L : bits);
+        }
+        this.free.release(released);
+        logger.debug("All packet ids have been released. Amount={}.", released);
+    }
+
+    /**
+     * Returns the amount of allocated identifiers.
+     *
+     * @return the amount of allocated identifiers
+     */
+    int inUse() {
+        return CAPACITY - this.free.availablePermits();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import io.netty.handler.codec.mqtt.MqttMessage;
+import io.netty.util.concurrent.Promise;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Table of in-flight MQTT messages indexed directly by packet identifier. A
+ * slot is either free (null) or holds an immutable entry, and the slot state
+ * is changed atomically, so the table may be used by many threads without
+ * locking and without boxing the identifiers.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+final class MqttPacketIdTable {
+
+    /**
+     * Valid packet identifiers are 1..65535 (MQTT 3.1.1 section 2.3.1).
+     */
+    static final int MAX_PACKET_ID = 0xffff;
+
+    private final AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(MAX_PACKET_ID + 1);
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    static boolean isValidId(int id) {
+        return id > 0 && id <= MAX_PACKET_ID;
+    }
+
+    /**
+     * Stores the future and the message in the slot of the given identifier.
+     *
+     * @param id the packet identifier
+     * @param future the future to complete on acknowledgement
+     * @param message the message waiting for acknowledgement
+     * @return the previous entry of the slot or null if the slot was free
+     */
+    Entry put(int id, Promise<? extends MqttMessage> future, MqttMessage message) {
+        Entry previous = this.slots.getAndSet(id, new Entry(future, message));
+        if (previous == null) {
+            this.size.incrementAndGet();
+        }
+
+        return previous;
+    }
+
+    /**
+     * Frees the slot of the given identifier.
+     *
+     * @param id the packet identifier
+     * @return the removed entry or null if the slot was free
+     */
+    Entry remove(int id) {
+        Entry previous = this.slots.getAndSet(id, null);
+        if (previous != null) {
+            this.size.decrementAndGet();
+        }
+
+        return previous;
+    }
+
+    Entry get(int id) {
+        return this.slots.get(id);
+    }
+
+    int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Passes the stored messages to the action in identifier order. The slots
+     * are read in place, nothing is copied. Messages added or removed during
+     * the walk may or may not be seen.
+     *
+     * @param action the action to perform on each message
+     */
+    void forEachMessage(Consumer<? super MqttMessage> action) {
+        int remaining = this.size.get();
+        for (int id = 1; id <= MAX_PACKET_ID && remaining > 0; id++) {
+            Entry entry = this.slots.get(id);
+            if (entry != null) {
+                --remaining;
+                action.accept(entry.message());
+            }
+        }
+    }
+
+    void clear() {
+        for (int id = 1; id <= MAX_PACKET_ID; id++) {
+            this.remove(id);
+        }
+    }
+
+    static final class Entry {
+
+        private final Promise<? extends MqttMessage> future;
+
+        private final MqttMessage message;
+
+        Entry(Promise<? extends MqttMessage> future, MqttMessage message) {
+            this.future = future;
+            this.message = message;
+        }
+
+        Promise<? extends MqttMessage> future() {
+            return future;
+        }
+
+        MqttMessage message() {
+            return message;
+        }
+    }
+}
@@ -43,7 +43,6 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import ru.maxeltr.homeMq2t.Service.SubscriptionService;
 
 /**
  *
@@ -62,9 +61,6 @@ public class MqttPingScheduleHandler extends ChannelInboundHandlerAdapter {
     @Autowired
     private PeriodicTrigger pingPeriodicTrigger;
 
-    @Autowired
-    private SubscriptionService subscriptionService;
-
     @Value("${reconnect:true}")
     private boolean reconnect;
 
@@ -103,6 +99,14 @@ public class MqttPingScheduleHandler extends ChannelInboundHandlerAdapter {
         this.ctx = ctx;
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (this.future != null) {
+            this.stopPing();
+        }
+        ctx.fireChannelInactive();
+    }
+
     public void stopPing() {
         if (this.future != null && !this.future.isDone()) {
             this.future.cancel(false);
@@ -143,7 +147,8 @@ public class MqttPingScheduleHandler extends ChannelInboundHandlerAdapter {
                 return;
             }
 
-            if (pingRespTimeout.get()) {
+            //PINGRESP cannot be read while reading is paused by back-pressure
+            if (pingRespTimeout.get() && ctx.channel().config().isAutoRead()) {
                 logger.warn("Ping response was not received within the keep-alive period. {}", this);
                 stopPing();
                 disconnectOrReconnect();
@@ -167,7 +172,6 @@ public class MqttPingScheduleHandler extends ChannelInboundHandlerAdapter {
             if (reconnect) {
                 logger.info("Start the reconnection attempt.");
                 serviceMediator.reconnect();
-                subscriptionService.subscribeFromConfig();
             } else {
                 logger.info("Disconnect without the reconnection.");
                 serviceMediator.disconnect(MqttReasonCodeAndPropertiesVariableHeader.REASON_CODE_OK);
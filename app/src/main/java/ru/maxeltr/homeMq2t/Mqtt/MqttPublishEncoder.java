@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.mqtt.MqttFixedHeader;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import java.util.List;
+
+/**
+ * Encodes MQTT 3.1.1 PUBLISH messages without copying the payload. The fixed
+ * and variable headers are written to a small buffer, a duplicate of the
+ * payload buffer is passed to the transport. Other messages are passed to
+ * MqttEncoder.
+ * Must be placed after MqttEncoder in the pipeline.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+@ChannelHandler.Sharable
+public final class MqttPublishEncoder extends MessageToMessageEncoder<MqttPublishMessage> {
+
+    public static final MqttPublishEncoder INSTANCE = new MqttPublishEncoder();
+
+    private MqttPublishEncoder() {
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, MqttPublishMessage msg, List<Object> out) {
+        MqttFixedHeader fixedHeader = msg.fixedHeader();
+        String topicName = msg.variableHeader().topicName();
+        int topicLength = ByteBufUtil.utf8Bytes(topicName);
+        int qos = fixedHeader.qosLevel().value();
+        ByteBuf payload = msg.payload();
+
+        int variableHeaderLength = 2 + topicLength + (qos > 0 ? 2 : 0);
+        int remainingLength = variableHeaderLength + payload.readableBytes();
+        ByteBuf header = ctx.alloc().buffer(1 + 4 + variableHeaderLength);
+        header.writeByte(MqttMessageType.PUBLISH.value() << 4
+                | (fixedHeader.isDup() ? 0x08 : 0)
+                | qos << 1
+                | (fixedHeader.isRetain() ? 0x01 : 0));
+        writeVariableLengthInt(header, remainingLength);
+        header.writeShort(topicLength);
+        ByteBufUtil.reserveAndWriteUtf8(header, topicName, topicLength);
+        if (qos > 0) {
+            header.writeShort(msg.variableHeader().packetId());
+        }
+
+        out.add(header);
+        if (payload.isReadable()) {
+            //own indices, a partial write must not move the stored payload of a QoS 1/2 message
+            out.add(payload.retainedDuplicate());
+        }
+    }
+
+    private static void writeVariableLengthInt(ByteBuf buf, int num) {
+        do {
+            int digit = num % 128;
+            num /= 128;
+            if (num > 0) {
+                digit |= 0x80;
+            }
+            buf.writeByte(digit);
+        } while (num > 0);
+    }
+}
@@ -38,8 +38,10 @@ import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
 import io.netty.util.concurrent.GenericFutureListener;
 import io.netty.util.concurrent.Promise;
+import java.util.concurrent.RejectedExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import ru.maxeltr.homeMq2t.Service.ServiceMediator;
 
 /**
@@ -56,6 +58,9 @@ public class MqttPublishHandlerImpl extends SimpleChannelInboundHandler<MqttMess
 
     private final ServiceMediator serviceMediator;
 
+    @Autowired
+    private MqttInboundExecutor inboundExecutor;
+
     public MqttPublishHandlerImpl(MqttAckMediator mqttAckMediator, ServiceMediator serviceMediator) {
         this.mqttAckMediator = mqttAckMediator;
         this.serviceMediator = serviceMediator;
@@ -120,7 +125,7 @@ public class MqttPublishHandlerImpl extends SimpleChannelInboundHandler<MqttMess
                         pubRelMessage.fixedHeader().qosLevel(),
                         pubRelMessage.fixedHeader().isRetain()
                 );
-                Promise<MqttMessage> pubRelFuture = this.mqttAckMediator.getFuture(pubRelId);
+                Promise<MqttMessage> pubRelFuture = this.mqttAckMediator.getInboundFuture(pubRelId);
                 if (pubRelFuture == null) {
                     logger.warn("There is no stored future of PUBLISH message for PUBREL message id={}. May be it was acknowledged already.", pubRelId);
                     return;
@@ -175,17 +180,17 @@ public class MqttPublishHandlerImpl extends SimpleChannelInboundHandler<MqttMess
     private void handlePubRel(Channel channel, MqttMessage pubRelMessage) {
         MqttMessageIdVariableHeader variableHeader = (MqttMessageIdVariableHeader) pubRelMessage.variableHeader();
         int id = variableHeader.messageId();
-        MqttMessage storedMessage = this.mqttAckMediator.getMessage(id);
+        MqttMessage storedMessage = this.mqttAckMediator.getInboundMessage(id);
         if (!(storedMessage instanceof MqttPublishMessage)) {
             logger.warn("Error. There is no stored publish message for received PUBREL message id={}.", id);
             return;
         }
 
-        this.mqttAckMediator.remove(id);
+        this.mqttAckMediator.removeInbound(id);
         logger.info("Publish message QoS2 id={} has been acknowledged.", id);
 
-        this.serviceMediator.handleMessage((MqttPublishMessage) storedMessage);
-        ReferenceCountUtil.release(storedMessage);
+        //the stored message has been retained already, the reference is passed to the inbound executor
+        this.dispatch(channel, (MqttPublishMessage) storedMessage);
 
         MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBCOMP, false, MqttQoS.AT_MOST_ONCE, false, 0);
         MqttMessage pubCompMessage = new MqttMessage(fixedHeader, variableHeader);
@@ -206,13 +211,11 @@ public class MqttPublishHandlerImpl extends SimpleChannelInboundHandler<MqttMess
         MqttMessageIdVariableHeader variableHeader;
         switch (message.fixedHeader().qosLevel()) {
             case AT_MOST_ONCE:
-                //ReferenceCountUtil.retain(message);		//TODO del?	message does not save
-                this.serviceMediator.handleMessage(message);
+                this.dispatch(channel, message.retain());
 
                 break;
             case AT_LEAST_ONCE:
-                //ReferenceCountUtil.retain(message);		//TODO del? message does not save
-                this.serviceMediator.handleMessage(message);	//TODO check DUP first!
+                this.dispatch(channel, message.retain());	//TODO check DUP first!
 
                 fixedHeader = new MqttFixedHeader(MqttMessageType.PUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0);
                 variableHeader = MqttMessageIdVariableHeader.from(message.variableHeader().packetId());
@@ -229,10 +232,10 @@ public class MqttPublishHandlerImpl extends SimpleChannelInboundHandler<MqttMess
 
                 break;
             case EXACTLY_ONCE:
-                if (!this.mqttAckMediator.isContainId(message.variableHeader().packetId())) {
+                if (!this.mqttAckMediator.isContainInboundId(message.variableHeader().packetId())) {
                     ReferenceCountUtil.retain(message);
                     Promise<? extends MqttMessage> publishFuture = channel.eventLoop().newPromise();
-                    this.mqttAckMediator.add(message.variableHeader().packetId(), publishFuture, message);
+                    this.mqttAckMediator.addInbound(message.variableHeader().packetId(), publishFuture, message);
                     publishFuture.addListener((GenericFutureListener<? extends Future<? super MqttMessage>>) f -> {
                         MqttPublishHandlerImpl.this.handlePubRel(channel, (MqttMessage) f.get());
                     });
@@ -258,6 +261,33 @@ public class MqttPublishHandlerImpl extends SimpleChannelInboundHandler<MqttMess
         }
     }
 
+    /**
+     * Passes the message to the inbound executor, so that decoding and
+     * dispatching the payload do not run on the event loop. The executor keeps
+     * the order of messages per topic. The method takes over one reference to
+     * the message and releases it when the message has been handled.
+     *
+     * @param channel the channel the message was read from
+     * @param message the retained publish message
+     */
+    private void dispatch(Channel channel, MqttPublishMessage message) {
+        String topic = message.variableHeader().topicName();
+        try {
+            this.inboundExecutor.execute(channel, topic, message.payload().readableBytes(), () -> {
+                try {
+                    this.serviceMediator.handleMessage(message);
+                } catch (Exception ex) {
+                    logger.warn("Could not handle publish message id={}, topic={}.", message.variableHeader().packetId(), topic, ex);
+                } finally {
+                    ReferenceCountUtil.release(message);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            ReferenceCountUtil.release(message);
+            logger.warn("Publish message id={}, topic={} has been rejected by inbound executor.", message.variableHeader().packetId(), topic);
+        }
+    }
+
     public ChannelHandlerContext getChannelHandlerContext() {
         return this.ctx;
     }
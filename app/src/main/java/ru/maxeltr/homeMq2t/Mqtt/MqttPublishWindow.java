@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounds the amount and the total payload size of the QoS 1/2 publish messages
+ * that wait for acknowledgement. Messages are kept in send order, so the
+ * oldest ones can be dropped when the overflow policy is DROP_OLDEST. A QoS 2
+ * message is not dropped once PUBREL has been sent, since the broker holds
+ * its packet id until PUBCOMP.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+final class MqttPublishWindow {
+
+    private final int maxMessages;
+
+    private final long maxBytes;
+
+    private final MqttOverflowPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = this.lock.newCondition();
+
+    private final Map<Integer, Integer> inFlight = new LinkedHashMap<>();
+
+    private final Set<Integer> released = new HashSet<>();
+
+    private long bytes;
+
+    MqttPublishWindow(int maxMessages, long maxBytes, MqttOverflowPolicy policy) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+    }
+
+    MqttOverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Admits the message into the window. A message larger than the byte
+     * budget is admitted only into an empty window.
+     *
+     * @param id the packet id of the message
+     * @param size the payload size of the message in bytes
+     * @param timeout the maximum time to wait for room in milliseconds, used
+     * by the BLOCK policy only
+     * @param evictor receives the ids of the messages dropped by the
+     * DROP_OLDEST policy. It is called after the window has been unlocked.
+     * @return true if the message has been admitted
+     */
+    boolean acquire(int id, int size, long timeout, IntConsumer evictor) {
+        List<Integer> evicted = List.of();
+        boolean admitted = false;
+        this.lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!this.hasRoom(size)) {
+                if (this.policy == MqttOverflowPolicy.DROP_OLDEST) {
+                    Map.Entry<Integer, Integer> entry = this.removeOldestPublish();
+                    if (entry == null) {
+                        break;
+                    }
+                    if (evicted.isEmpty()) {
+                        evicted = new ArrayList<>();
+                    }
+                    this.bytes -= entry.getValue();
+                    evicted.add(entry.getKey());
+                } else if (this.policy == MqttOverflowPolicy.BLOCK && nanos > 0) {
+                    nanos = this.notFull.awaitNanos(nanos);
+                } else {
+                    return false;
+                }
+            }
+            if (this.hasRoom(size)) {
+                this.inFlight.put(id, size);
+                this.bytes += size;
+                admitted = true;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.lock.unlock();
+        }
+        evicted.forEach(evictor::accept);
+
+        return admitted;
+    }
+
+    /**
+     * Removes the oldest message that has not been released.
+     *
+     * @return the packet id and the size of the message or null if all
+     * messages have been released
+     */
+    private Map.Entry<Integer, Integer> removeOldestPublish() {
+        Iterator<Map.Entry<Integer, Integer>> it = this.inFlight.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            if (!this.released.contains(entry.getKey())) {
+                it.remove();
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Marks the QoS 2 message as released, PUBREL has been sent for it. The
+     * message is not dropped by the DROP_OLDEST policy after that.
+     *
+     * @param id the packet id of the message
+     */
+    void markReleased(int id) {
+        this.lock.lock();
+        try {
+            if (this.inFlight.containsKey(id)) {
+                this.released.add(id);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private boolean hasRoom(int size) {
+        if (this.inFlight.isEmpty()) {
+            return true;
+        }
+
+        return this.inFlight.size() < this.maxMessages && this.bytes + size <= this.maxBytes;
+    }
+
+    /**
+     * Removes the message from the window. Does nothing if the message is not
+     * in the window.
+     *
+     * @param id the packet id of the message
+     */
+    void release(int id) {
+        this.lock.lock();
+        try {
+            Integer size = this.inFlight.remove(id);
+            this.released.remove(id);
+            if (size != null) {
+                this.bytes -= size;
+                this.notFull.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    void releaseAll() {
+        this.lock.lock();
+        try {
+            this.inFlight.clear();
+            this.released.clear();
+            this.bytes = 0;
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    int size() {
+        this.lock.lock();
+        try {
+            return this.inFlight.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    long bytes() {
+        this.lock.lock();
+        try {
+            return this.bytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
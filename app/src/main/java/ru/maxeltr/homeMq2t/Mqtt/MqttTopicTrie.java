@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable index of MQTT topic filters. Each filter level is a node of the
+ * trie, so resolving a topic name costs O(topic levels) and does not depend on
+ * the number of stored filters. Supports single-level (+) and multi-level (#)
+ * wildcards according to MQTT 3.1.1 section 4.7.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ * @param <T> type of the values bound to the topic filters
+ */
+public final class MqttTopicTrie<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttTopicTrie.class);
+
+    public static final char LEVEL_SEPARATOR = '/';
+
+    public static final String SINGLE_LEVEL_WILDCARD = "+";
+
+    public static final String MULTI_LEVEL_WILDCARD = "#";
+
+    private static final MqttTopicTrie<?> EMPTY = new MqttTopicTrie<>(new Node<>(), 0);
+
+    private final Node<T> root;
+
+    private final int size;
+
+    private MqttTopicTrie(Node<T> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> MqttTopicTrie<T> empty() {
+        return (MqttTopicTrie<T>) EMPTY;
+    }
+
+    public static <T> MqttTopicTrie.Builder<T> newBuilder() {
+        return new MqttTopicTrie.Builder<>();
+    }
+
+    /**
+     * Returns the number of values stored in the trie.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Resolve the given topic name to the values of all matching topic
+     * filters.
+     *
+     * @param topic the topic name of a received PUBLISH message. Must not
+     * contain wildcards.
+     * @return a list of values bound to the matching filters, returns an empty
+     * list if there are no matches.
+     */
+    public List<T> match(String topic) {
+        if (topic == null || size == 0) {
+            return new ArrayList<>();
+        }
+        List<T> result = new ArrayList<>();
+        this.collect(this.root, topic, 0, result);
+
+        return result;
+    }
+
+    private void collect(Node<T> node, String topic, int from, List<T> result) {
+        //Topics beginning with $ are not matched by a filter starting with a wildcard
+        boolean wildcardsAllowed = from != 0 || topic.isEmpty() || topic.charAt(0) != '$';
+
+        if (wildcardsAllowed) {
+            Node<T> multiLevel = node.children.get(MULTI_LEVEL_WILDCARD);
+            if (multiLevel != null) {
+                result.addAll(multiLevel.values);
+            }
+        }
+
+        if (from > topic.length()) {
+            result.addAll(node.values);
+            return;
+        }
+
+        int end = topic.indexOf(LEVEL_SEPARATOR, from);
+        if (end < 0) {
+            end = topic.length();
+        }
+
+        Node<T> exact = node.children.get(topic.substring(from, end));
+        if (exact != null) {
+            this.collect(exact, topic, end + 1, result);
+        }
+
+        if (wildcardsAllowed) {
+            Node<T> singleLevel = node.children.get(SINGLE_LEVEL_WILDCARD);
+            if (singleLevel != null) {
+                this.collect(singleLevel, topic, end + 1, result);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given string is a valid MQTT topic filter: it is not
+     * empty, the multi-level wildcard is the last level and wildcards occupy an
+     * entire level.
+     *
+     * @param filter the topic filter to check
+     * @return true if the filter is valid
+     */
+    public static boolean isValidFilter(String filter) {
+        if (StringUtils.isEmpty(filter)) {
+            return false;
+        }
+
+        String[] levels = StringUtils.splitPreserveAllTokens(filter, LEVEL_SEPARATOR);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (level.contains(MULTI_LEVEL_WILDCARD) && (!level.equals(MULTI_LEVEL_WILDCARD) || i != levels.length - 1)) {
+                return false;
+            }
+            if (level.contains(SINGLE_LEVEL_WILDCARD) && !level.equals(SINGLE_LEVEL_WILDCARD)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Node<T> {
+
+        private Map<String, Node<T>> children = Collections.emptyMap();
+
+        private List<T> values = Collections.emptyList();
+
+        private Node<T> child(String level) {
+            if (this.children.isEmpty()) {
+                this.children = new HashMap<>();
+            }
+            return this.children.computeIfAbsent(level, k -> new Node<>());
+        }
+
+        private void addValue(T value) {
+            if (this.values.isEmpty()) {
+                this.values = new ArrayList<>(1);
+            }
+            this.values.add(value);
+        }
+
+        private void freeze() {
+            this.values = this.values.isEmpty() ? Collections.emptyList() : List.copyOf(this.values);
+            this.children.values().forEach(Node::freeze);
+            this.children = this.children.isEmpty() ? Collections.emptyMap() : Map.copyOf(this.children);
+        }
+    }
+
+    public static class Builder<T> {
+
+        private Node<T> root = new Node<>();
+
+        private int size;
+
+        /**
+         * Bind the value to the topic filter. Invalid filters are skipped.
+         *
+         * @param filter the topic filter, may contain wildcards
+         * @param value the value to bind
+         * @return this builder
+         */
+        public Builder<T> add(String filter, T value) {
+            if (!isValidFilter(filter)) {
+                logger.warn("Invalid topic filter={} was skipped. Value={}", filter, value);
+                return this;
+            }
+
+            Node<T> node = this.root;
+            for (String level : StringUtils.splitPreserveAllTokens(filter, LEVEL_SEPARATOR)) {
+                node = node.child(level);
+            }
+            node.addValue(value);
+            this.size++;
+
+            return this;
+        }
+
+        public MqttTopicTrie<T> build() {
+            Node<T> built = this.root;
+            built.freeze();
+            this.root = new Node<>();
+            int builtSize = this.size;
+            this.size = 0;
+
+            return new MqttTopicTrie<>(built, builtSize);
+        }
+    }
+}
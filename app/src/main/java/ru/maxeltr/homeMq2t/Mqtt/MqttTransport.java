@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Mqtt;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Holds the event loop group of the MQTT client. The group lives as long as
+ * the application and is shared by all connections, so a reconnect does not
+ * start new threads. The native epoll transport is used when it is available.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class MqttTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttTransport.class);
+
+    @Value("${event-loop-threads:1}")
+    private int eventLoopThreads;
+
+    @Value("${native-transport:true}")
+    private boolean nativeTransport;
+
+    @Value("${tcp-nodelay:true}")
+    private boolean tcpNoDelay;
+
+    @Value("${so-sndbuf:0}")
+    private int soSndBuf;
+
+    @Value("${so-rcvbuf:0}")
+    private int soRcvBuf;
+
+    @Value("${write-buffer-low-water-mark:32768}")
+    private int writeBufferLowWaterMark;
+
+    @Value("${write-buffer-high-water-mark:65536}")
+    private int writeBufferHighWaterMark;
+
+    private EventLoopGroup eventLoopGroup;
+
+    private Class<? extends SocketChannel> channelClass;
+
+    @PostConstruct
+    public void init() {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("Mq2tEventLoop", true);
+        if (this.nativeTransport && Epoll.isAvailable()) {
+            this.eventLoopGroup = new EpollEventLoopGroup(this.eventLoopThreads, threadFactory);
+            this.channelClass = EpollSocketChannel.class;
+        } else {
+            if (this.nativeTransport) {
+                logger.info("Native epoll transport is not available. {}", Epoll.unavailabilityCause() != null ? Epoll.unavailabilityCause().getMessage() : "");
+            }
+            this.eventLoopGroup = new NioEventLoopGroup(this.eventLoopThreads, threadFactory);
+            this.channelClass = NioSocketChannel.class;
+        }
+        logger.info("Mqtt transport={}, event loop threads={}.", this.channelClass.getSimpleName(), this.eventLoopThreads);
+    }
+
+    public EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * Creates a bootstrap bound to the shared event loop group with the
+     * configured socket options.
+     *
+     * @return a new bootstrap
+     */
+    public Bootstrap newBootstrap() {
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(this.eventLoopGroup);
+        bootstrap.channel(this.channelClass);
+        bootstrap.option(ChannelOption.TCP_NODELAY, this.tcpNoDelay);
+        bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(this.writeBufferLowWaterMark, this.writeBufferHighWaterMark));
+        if (this.soSndBuf > 0) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, this.soSndBuf);
+        }
+        if (this.soRcvBuf > 0) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, this.soRcvBuf);
+        }
+
+        return bootstrap;
+    }
+
+    public void shutdown() {
+        if (this.eventLoopGroup != null) {
+            this.eventLoopGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS).awaitUninterruptibly();
+            logger.info("Mqtt event loop group has been shut down.");
+        }
+    }
+}
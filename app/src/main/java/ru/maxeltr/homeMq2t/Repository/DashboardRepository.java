@@ -35,6 +35,8 @@ public interface DashboardRepository<T extends BaseEntity> extends JpaRepository
 
     List<DashboardEntity<T>> findByType(DashboardType dashboardType);
 
+    Optional<DashboardEntity<T>> findFirstByType(DashboardType dashboardType);
+
     Optional<DashboardEntity<T>> findByNumber(int number);
 
     Optional<DashboardEntity> findByName(String name);
@@ -23,9 +23,11 @@
  */
 package ru.maxeltr.homeMq2t.Service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttQoS;
@@ -35,7 +37,10 @@ import io.netty.handler.codec.mqtt.MqttTopicSubscription;
 import io.netty.handler.codec.mqtt.MqttUnsubAckMessage;
 import io.netty.util.concurrent.Promise;
 import jakarta.annotation.PostConstruct;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
@@ -45,10 +50,14 @@ import org.springframework.beans.factory.annotation.Value;
 import ru.maxeltr.homeMq2t.AppShutdownManager;
 import ru.maxeltr.homeMq2t.Config.AppProperties;
 import ru.maxeltr.homeMq2t.Config.CardPropertiesProvider;
+import ru.maxeltr.homeMq2t.Config.MediaTypes;
 import ru.maxeltr.homeMq2t.Model.Msg;
 import ru.maxeltr.homeMq2t.Model.MsgImpl;
+import ru.maxeltr.homeMq2t.Model.MsgJsonDecoder;
 import ru.maxeltr.homeMq2t.Mqtt.HmMq2t;
 import ru.maxeltr.homeMq2t.Mqtt.MqttChannelInitializer;
+import ru.maxeltr.homeMq2t.Service.UI.BinaryPayloadStore;
+import ru.maxeltr.homeMq2t.Service.UI.BinaryPayloadStore.BinaryPayload;
 import ru.maxeltr.homeMq2t.Service.UI.MqttManager;
 import ru.maxeltr.homeMq2t.Service.UI.UIService;
 
@@ -87,11 +96,17 @@ public class ServiceMediatorImpl implements ServiceMediator {
     @Autowired
     private ProcessExecutor processExecutor;
 
+    @Autowired
+    private BinaryPayloadStore binaryPayloadStore;
+
     @Value("${wait-disconnect-while-shutdown:1000}")
     private int waitDisconnect;
 
+    private MsgJsonDecoder msgDecoder;
+
     @PostConstruct
     public void postConstruct() {
+        this.msgDecoder = new MsgJsonDecoder(this.mapper.getFactory());
         this.setMediator();
 
         appProperties.getAllStartupTasks().forEach(
@@ -115,12 +130,20 @@ public class ServiceMediatorImpl implements ServiceMediator {
     @Override
     public void publish(Msg msg, String topic, MqttQoS qos, boolean retain) {
         logger.info("Publish message has been passed to mqtt client. topic={}, qos={}, retain={}. {}", topic, qos, retain, msg);
+        //the buffer is released by the mqtt client when the message has been sent or acknowledged
+        ByteBuf payload = PooledByteBufAllocator.DEFAULT.directBuffer();
         try {
-            byte[] jsonMsg = this.mapper.writeValueAsBytes(msg);
-            this.hmMq2t.publish(topic, Unpooled.wrappedBuffer(jsonMsg), qos, retain);
-        } catch (JsonProcessingException ex) {
+            this.mapper.writeValue((OutputStream) new ByteBufOutputStream(payload), msg);
+        } catch (IOException ex) {
+            payload.release();
             logger.warn("Cannot convert msg to json {}", msg, ex.getMessage());
+            return;
         }
+        this.hmMq2t.publish(topic, payload, qos, retain).whenComplete((v, ex) -> {
+            if (ex != null) {
+                logger.warn("Message has not been delivered. topic={}, qos={}. {}", topic, qos, ex.getMessage());
+            }
+        });
     }
 
     @Override
@@ -137,12 +160,23 @@ public class ServiceMediatorImpl implements ServiceMediator {
      * @param topic the MQTT topic name
      * @return a list of card numbers associated with the topic
      *
+     * Cards in binary mode are excluded, their payload is handled before
+     * dispatching.
+     *
      * @implNote This method is package-private and intended for use by
      * ServiceType numbers-getter method references (e.g.
      * ServiceMediator::getCardNumbersByTopic).
      */
     List<String> getCardNumbersByTopic(String topic) {
-        return cardPropertiesProvider.getCardNumbersByTopic(topic);
+        List<String> numbers = cardPropertiesProvider.getCardNumbersByTopic(topic);
+        List<String> result = new ArrayList<>(numbers.size());
+        for (String number : numbers) {
+            if (!MediaTypes.isBinary(cardPropertiesProvider.getCardSubDataType(number))) {
+                result.add(number);
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -160,14 +194,18 @@ public class ServiceMediatorImpl implements ServiceMediator {
         int id = mqttMessage.variableHeader().packetId();
         logger.debug("Start handle message id={}.", id);
 
+        if (this.handleBinaryPayload(mqttMessage) && this.getCardNumbersByTopic(mqttMessage.variableHeader().topicName()).isEmpty()) {
+            logger.debug("End handle message id={}. All cards of the topic are in binary mode.", id);
+            return;
+        }
+
         Msg.Builder builder;
         try {
-            builder = this.mapper.readValue(mqttMessage.payload().toString(StandardCharsets.UTF_8), Msg.Builder.class); //TODO pass only binary data from Msg.data. Create msg locally.
+            builder = this.msgDecoder.decode(mqttMessage.payload());
             logger.debug("Convert mqttMessage to Msg. {}", builder);
-        } catch (JsonProcessingException ex) {
+        } catch (IOException ex) {
             logger.warn("Cannot convert json to Msg. Message id={}. Data was added as plain text. {}", id, ex.getMessage());
-            builder = MsgImpl.newBuilder()
-                    .data(mqttMessage.payload().toString(StandardCharsets.UTF_8))
+            builder = this.msgDecoder.plainText(mqttMessage.payload())
                     .timestamp("n/a"); //TODO
         }
 
@@ -182,6 +220,37 @@ public class ServiceMediatorImpl implements ServiceMediator {
         logger.debug("End handle message id={}.", id);
     }
 
+    /**
+     * Passes the raw payload to the cards in binary mode. The payload is
+     * stored as is, and the cards get a message with its URL. The type of the
+     * payload is the subscription data type of the card.
+     *
+     * @param mqttMessage the Mqtt publish message
+     * @return true if there were cards in binary mode
+     */
+    private boolean handleBinaryPayload(MqttPublishMessage mqttMessage) {
+        byte[] bytes = null;
+        for (String number : cardPropertiesProvider.getCardNumbersByTopic(mqttMessage.variableHeader().topicName())) {
+            String type = cardPropertiesProvider.getCardSubDataType(number);
+            if (!MediaTypes.isBinary(type)) {
+                continue;
+            }
+            if (bytes == null) {
+                bytes = ByteBufUtil.getBytes(mqttMessage.payload());
+            }
+            BinaryPayload payload = this.binaryPayloadStore.put(number, bytes, type);
+            Msg msg = MsgImpl.newBuilder()
+                    .id(String.valueOf(mqttMessage.variableHeader().packetId()))
+                    .type(type)
+                    .data(BinaryPayloadStore.getUrl(number, payload))
+                    .timestamp(String.valueOf(Instant.now().toEpochMilli()))
+                    .build();
+            this.display(msg, number);
+        }
+
+        return bytes != null;
+    }
+
     @Override
     public Promise<MqttConnAckMessage> connect() {
         return this.hmMq2t.connect();
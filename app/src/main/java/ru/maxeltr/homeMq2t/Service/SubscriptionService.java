@@ -28,6 +28,7 @@ import io.netty.handler.codec.mqtt.MqttUnsubAckMessage;
 import io.netty.util.concurrent.Promise;
 import java.util.List;
 import ru.maxeltr.homeMq2t.Entity.HasSubscription;
+import ru.maxeltr.homeMq2t.Mqtt.MqttConnectionStateEvent;
 
 public interface SubscriptionService {
 
@@ -37,4 +38,6 @@ public interface SubscriptionService {
 
     public void subscribeFromConfig();
 
+    public void onConnectionStateChanged(MqttConnectionStateEvent event);
+
 }
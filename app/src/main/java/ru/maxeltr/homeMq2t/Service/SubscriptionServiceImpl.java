@@ -46,11 +46,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import ru.maxeltr.homeMq2t.Config.AppProperties;
 import ru.maxeltr.homeMq2t.Config.CardPropertiesProvider;
 import ru.maxeltr.homeMq2t.Entity.CardEntity;
 import ru.maxeltr.homeMq2t.Entity.HasSubscription;
 import ru.maxeltr.homeMq2t.Model.Status;
+import ru.maxeltr.homeMq2t.Mqtt.MqttConnectionState;
+import ru.maxeltr.homeMq2t.Mqtt.MqttConnectionStateEvent;
 import ru.maxeltr.homeMq2t.Mqtt.MqttUtils;
 
 public class SubscriptionServiceImpl implements SubscriptionService {
@@ -77,6 +81,23 @@ public class SubscriptionServiceImpl implements SubscriptionService {
         subscribe(new ArrayList<>(cardPropertiesProvider.getAllSubscriptions()));
     }
 
+    /**
+     * Restores the subscriptions after the connection has been reestablished
+     * automatically. The event is published on the event loop of the MQTT
+     * client, subscribing waits for SUBACK, so it is done asynchronously.
+     *
+     * @param event the connection state event
+     */
+    @Override
+    @Async("processExecutor")
+    @EventListener
+    public void onConnectionStateChanged(MqttConnectionStateEvent event) {
+        if (event.getState() == MqttConnectionState.CONNECTED && event.isReconnect()) {
+            logger.info("Connection has been reestablished. Attempt={}. Restore subscriptions.", event.getAttempt());
+            this.subscribeFromConfig();
+        }
+    }
+
     @Override
     public void subscribe(List<HasSubscription> entities) {
         if (entities == null || entities.isEmpty()) {
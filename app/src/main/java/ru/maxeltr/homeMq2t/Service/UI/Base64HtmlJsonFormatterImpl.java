@@ -25,8 +25,10 @@ package ru.maxeltr.homeMq2t.Service.UI;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 import org.apache.commons.lang3.StringUtils;
@@ -34,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import ru.maxeltr.homeMq2t.Config.JsonPathExpression;
 import ru.maxeltr.homeMq2t.Model.Msg;
 import ru.maxeltr.homeMq2t.Model.MsgImpl;
 import ru.maxeltr.homeMq2t.Model.Status;
@@ -66,10 +69,7 @@ public class Base64HtmlJsonFormatterImpl implements UIJsonFormatter {
      */
     @Override
     public String parseAndCreateJson(String msg, String jsonPathExpression) {
-        String parsedValue = this.parseJson(msg, jsonPathExpression);
-        logger.debug("Parsed data by using jsonPath. Parsed value={}.", parsedValue);
-
-        return buildJson(MediaType.TEXT_PLAIN_VALUE, parsedValue);
+        return this.extractAndCreateJson(msg, JsonPathExpression.compileAll(jsonPathExpression));
     }
 
     /**
@@ -85,11 +85,57 @@ public class Base64HtmlJsonFormatterImpl implements UIJsonFormatter {
      */
     @Override
     public String parseAndCreateJson(String msg, List<String> jsonPathExpressions) {
+        return this.extractAndCreateJson(msg, JsonPathExpression.compileAll(String.join(" ", jsonPathExpressions)));
+    }
+
+    /**
+     * Extracts values from the provided JSON message using the compiled
+     * JSONPath expressions. Simple expressions are read by a streaming parser
+     * in one pass, the message is parsed by JsonPath once for the rest. A
+     * single expression gives the value itself, several expressions give the
+     * expression=value lines (each pair separated by the platform line
+     * separator).
+     *
+     * @param msg the JSON message to parse
+     * @param jsonPaths the compiled JSONPath expressions
+     * @return a JSON string produced by {@link #buildJson(String, String)}
+     * containing the extracted values
+     */
+    @Override
+    public String extractAndCreateJson(String msg, List<JsonPathExpression> jsonPaths) {
+        String[] values = new String[jsonPaths.size()];
+        boolean[] resolved = new boolean[jsonPaths.size()];
+        JsonFieldProjector.project(msg, jsonPaths, values, resolved);
+
+        DocumentContext document = null;
+        for (int i = 0; i < values.length; i++) {
+            if (resolved[i]) {
+                continue;
+            }
+            if (document == null) {
+                try {
+                    document = JsonPath.parse(msg);
+                } catch (Exception ex) {
+                    logger.info("Could not parse json. {}", ex.getMessage());
+                    Arrays.fill(values, "");
+                    break;
+                }
+            }
+            values[i] = this.read(document, jsonPaths.get(i));
+        }
+
+        if (jsonPaths.size() == 1) {
+            String parsedValue = values[0];
+            logger.debug("Parsed data by using jsonPath. Parsed value={}.", parsedValue);
+            return buildJson(MediaType.TEXT_PLAIN_VALUE, parsedValue);
+        }
+
         StringBuilder sb = new StringBuilder();
-        for (String exp : jsonPathExpressions) {
-            var val = this.parseJson(msg, exp);
+        for (int i = 0; i < values.length; i++) {
+            JsonPathExpression exp = jsonPaths.get(i);
+            var val = values[i];
             if (StringUtils.isNotBlank(val)) {
-                sb.append(exp)
+                sb.append(exp.getExpression())
                         .append(SEPARATOR_EQ)
                         .append(val)
                         .append(System.lineSeparator());
@@ -144,12 +190,15 @@ public class Base64HtmlJsonFormatterImpl implements UIJsonFormatter {
         return result;
     }
 
-    private String parseJson(String json, String jsonPathExpression) {
+    private String read(DocumentContext document, JsonPathExpression expression) {
+        if (expression.getPath() == null) {
+            return "";
+        }
         String parsedValue = "";
         try {
-            parsedValue = JsonPath.parse(json).read(jsonPathExpression, String.class);
+            parsedValue = document.read(expression.getPath(), String.class);
         } catch (Exception ex) {
-            logger.info("Could not parse json. {}", ex.getMessage());
+            logger.info("Could not read json by expression={}. {}", expression, ex.getMessage());
         }
 
         return parsedValue;
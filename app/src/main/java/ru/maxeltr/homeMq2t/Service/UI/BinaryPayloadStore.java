@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Service.UI;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the latest raw payload of each card in binary mode. The browser gets a
+ * short message with the URL of the payload and loads the bytes over HTTP, so
+ * the payload is neither Base64 encoded nor embedded into STOMP frames. Each
+ * stored payload gets a new version, the tag of the version is used as the
+ * ETag. The tag includes the start time of the process, since versions start
+ * from 1 after a restart and a browser may still cache the old payloads.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class BinaryPayloadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryPayloadStore.class);
+
+    public static final String PAYLOAD_PATH = "/card/%s/payload";
+
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private final ConcurrentMap<String, BinaryPayload> payloads = new ConcurrentHashMap<>();
+
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * Stores the payload of the card replacing the previous one.
+     *
+     * @param cardNumber the number of the card
+     * @param bytes the payload, must not be modified afterwards
+     * @param type the media type of the payload
+     * @return the stored payload
+     */
+    public BinaryPayload put(String cardNumber, byte[] bytes, String type) {
+        BinaryPayload payload = new BinaryPayload(bytes, type, this.versions.incrementAndGet());
+        this.payloads.put(cardNumber, payload);
+        logger.debug("Binary payload of card={} has been stored. Type={}, size={}, version={}.", cardNumber, type, bytes.length, payload.version());
+
+        return payload;
+    }
+
+    public Optional<BinaryPayload> get(String cardNumber) {
+        return Optional.ofNullable(this.payloads.get(cardNumber));
+    }
+
+    /**
+     * Returns the URL of the stored payload of the card. The version makes the
+     * URL change with each payload.
+     *
+     * @param cardNumber the number of the card
+     * @param payload the stored payload
+     * @return the URL of the payload
+     */
+    public static String getUrl(String cardNumber, BinaryPayload payload) {
+        return String.format(PAYLOAD_PATH, cardNumber) + "?v=" + payload.getTag();
+    }
+
+    public record BinaryPayload(byte[] bytes, String type, long version) {
+
+        /**
+         * Returns the version tag, unique across restarts of the process.
+         *
+         * @return the version tag
+         */
+        public String getTag() {
+            return EPOCH + "-" + this.version;
+        }
+
+        public String getETag() {
+            return "\"" + this.getTag() + "\"";
+        }
+    }
+}
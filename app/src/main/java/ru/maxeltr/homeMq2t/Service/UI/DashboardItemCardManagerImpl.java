@@ -28,16 +28,18 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import ru.maxeltr.homeMq2t.Config.CardPropertiesProvider;
+import ru.maxeltr.homeMq2t.Config.ConfigSnapshotProvider;
 import ru.maxeltr.homeMq2t.Config.DashboardPropertiesProvider;
 import ru.maxeltr.homeMq2t.Config.MediaTypes;
 import ru.maxeltr.homeMq2t.Entity.CardEntity;
@@ -46,11 +48,25 @@ import ru.maxeltr.homeMq2t.Model.ViewModel;
 import ru.maxeltr.homeMq2t.Model.Msg;
 import ru.maxeltr.homeMq2t.Model.Status;
 
+/**
+ * Manager of cards and card dashboards. Reads take no locks: rendered
+ * dashboards are served from an immutable snapshot that is valid for one
+ * version of the card settings, a missing dashboard is rendered and added to
+ * a copy of the snapshot. Writes are serialized and publish an empty snapshot
+ * for the new settings version.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
 public class DashboardItemCardManagerImpl implements DashboardItemManager {
 
     private static final Logger logger = LoggerFactory.getLogger(DashboardItemCardManagerImpl.class);
 
-    private final Lock lock = new ReentrantLock();
+    /**
+     * Cache key of the start dashboard, which is requested without a number.
+     */
+    private static final String START_DASHBOARD_KEY = "";
+
+    private final AtomicReference<RenderedDashboards> renderedDashboards = new AtomicReference<>(new RenderedDashboards(0, Map.of()));
 
     @Autowired
     @Qualifier("getCardPropertiesProvider")
@@ -66,6 +82,9 @@ public class DashboardItemCardManagerImpl implements DashboardItemManager {
     @Autowired
     private MqttManager mqttManager;
 
+    @Autowired
+    private ConfigSnapshotProvider configSnapshotProvider;
+
     private final ObjectMapper mapper;
 
     public DashboardItemCardManagerImpl() {
@@ -77,7 +96,8 @@ public class DashboardItemCardManagerImpl implements DashboardItemManager {
      * Retrieve items for a dashboard and return a message whose data contains
      * the JSON representation of the dashboard view model. If msg.getId() is
      * not blank, the dashboard with that id(number) is requested from property
-     * provider. Otherwise the configured start dashboard is used.
+     * provider. Otherwise the configured start dashboard is used. The rendered
+     * and encoded dashboard is cached until the card settings change.
      *
      * @param msg incoming message containing optional dashboard number
      * @return a new Msg built from the incoming with JSON payload, type set to
@@ -86,26 +106,50 @@ public class DashboardItemCardManagerImpl implements DashboardItemManager {
      */
     @Override
     public Msg getItemsByDashboard(Msg msg) {
-        lock.lock();
-        try {
-            Optional<ViewModel<DashboardEntity>> dashboardOpt;
-            if (StringUtils.isNotBlank(msg.getId())) {
-                dashboardOpt = this.dashboardPropertiesProvider.getDashboard(msg.getId());
-            } else {
-                dashboardOpt = this.dashboardPropertiesProvider.getStartDashboard();
-            }
+        String key = StringUtils.isNotBlank(msg.getId()) ? msg.getId() : START_DASHBOARD_KEY;
+        long version = this.configSnapshotProvider.getSnapshot().getVersion();
+        RenderedDashboards rendered = this.renderedDashboards.get();
+        String data = rendered.version() == version ? rendered.dashboards().get(key) : null;
+        if (data != null) {
+            logger.debug("Dashboard={} has been taken from cache. Version={}.", key, version);
+        } else {
+            data = this.renderDashboard(key, version);
+        }
+
+        return msg.toBuilder()
+                .data(data)
+                .type(MediaTypes.TEXT_HTML_BASE64.getValue())
+                .timestamp(String.valueOf(Instant.now().toEpochMilli()))
+                .build();
+    }
 
-            return msg.toBuilder()
-                    .data(dashboardOpt
-                            .map(viewModel -> jsonFormatter.createAndEncodeHtml(viewModel.getHtml(), Status.OK))
-                            .orElseGet(() -> jsonFormatter.createAndEncodeHtml("", Status.FAIL))
-                    )
-                    .type(MediaTypes.TEXT_HTML_BASE64.getValue())
-                    .timestamp(String.valueOf(Instant.now().toEpochMilli()))
-                    .build();
-        } finally {
-            lock.unlock();
+    private String renderDashboard(String key, long version) {
+        Optional<ViewModel<DashboardEntity>> dashboardOpt;
+        if (START_DASHBOARD_KEY.equals(key)) {
+            dashboardOpt = this.dashboardPropertiesProvider.getStartDashboard();
+        } else {
+            dashboardOpt = this.dashboardPropertiesProvider.getDashboard(key);
         }
+
+        if (dashboardOpt.isEmpty()) {
+            return jsonFormatter.createAndEncodeHtml("", Status.FAIL);
+        }
+
+        String data = jsonFormatter.createAndEncodeHtml(dashboardOpt.get().getHtml(), Status.OK);
+
+        RenderedDashboards current;
+        RenderedDashboards next;
+        do {
+            current = this.renderedDashboards.get();
+            if (current.version() > version) {
+                logger.debug("Settings have been changed while dashboard={} was rendered. It is not cached.", key);
+                return data;
+            }
+            next = current.version() == version ? current.with(key, data) : new RenderedDashboards(version, Map.of(key, data));
+        } while (!this.renderedDashboards.compareAndSet(current, next));
+        logger.debug("Dashboard={} has been rendered and cached. Version={}.", key, version);
+
+        return data;
     }
 
     /**
@@ -122,26 +166,21 @@ public class DashboardItemCardManagerImpl implements DashboardItemManager {
      */
     @Override
     public Msg getItem(Msg msg) {
-        lock.lock();
-        try {
-            Optional<ViewModel<CardEntity>> cardSettingsOpt;
-            if (StringUtils.isNotBlank(msg.getId())) {
-                cardSettingsOpt = this.propertiesProvider.getCardSettings(msg.getId());
-            } else {
-                cardSettingsOpt = this.propertiesProvider.getEmptyCardSettings();
-            }
-
-            return msg.toBuilder()
-                    .data(cardSettingsOpt
-                            .map(viewModel -> jsonFormatter.createAndEncodeHtml(viewModel.getHtml(), Status.OK))
-                            .orElseGet(() -> jsonFormatter.createAndEncodeHtml("", Status.FAIL))
-                    )
-                    .type(MediaTypes.TEXT_HTML_BASE64.getValue())
-                    .timestamp(String.valueOf(Instant.now().toEpochMilli()))
-                    .build();
-        } finally {
-            lock.unlock();
+        Optional<ViewModel<CardEntity>> cardSettingsOpt;
+        if (StringUtils.isNotBlank(msg.getId())) {
+            cardSettingsOpt = this.propertiesProvider.getCardSettings(msg.getId());
+        } else {
+            cardSettingsOpt = this.propertiesProvider.getEmptyCardSettings();
         }
+
+        return msg.toBuilder()
+                .data(cardSettingsOpt
+                        .map(viewModel -> jsonFormatter.createAndEncodeHtml(viewModel.getHtml(), Status.OK))
+                        .orElseGet(() -> jsonFormatter.createAndEncodeHtml("", Status.FAIL))
+                )
+                .type(MediaTypes.TEXT_HTML_BASE64.getValue())
+                .timestamp(String.valueOf(Instant.now().toEpochMilli()))
+                .build();
     }
 
     /**
@@ -153,8 +192,7 @@ public class DashboardItemCardManagerImpl implements DashboardItemManager {
      * CardEntity.
      */
     @Override
-    public void saveItem(Msg msg) {
-        lock.lock();
+    public synchronized void saveItem(Msg msg) {
         try {
             JsonNode root = mapper.readTree(msg.getData());
             DashboardEntity<CardEntity> dashboardEntity = dashboardPropertiesProvider.getDashboardEntity(root.path("dashboardNumber").asText()).orElseThrow();
@@ -162,14 +200,13 @@ public class DashboardItemCardManagerImpl implements DashboardItemManager {
             cardEntity.setDashboard(dashboardEntity);
             CardEntity before = this.propertiesProvider.getCardEntity(String.valueOf(cardEntity.getId())).orElse(null);
             var entity = this.propertiesProvider.saveCardEntity(cardEntity);
+            this.invalidateRenderedDashboards();
             logger.debug("Saved card settings {}.", entity);
             this.mqttManager.updateSubscription(before, entity);
         } catch (JsonProcessingException ex) {
             logger.warn("Could not convert json data={} to map. {}", msg, ex);
         } catch (NoSuchElementException ex) {
             logger.warn("Could not find dashboard entity for message id={}. {}", msg.getId(), ex);
-        } finally {
-            lock.unlock();
         }
     }
 
@@ -179,21 +216,35 @@ public class DashboardItemCardManagerImpl implements DashboardItemManager {
      * @param msg incoming message whose data contains a JSON with an ID field.
      */
     @Override
-    public void deleteItem(Msg msg) {
-        lock.lock();
+    public synchronized void deleteItem(Msg msg) {
         try {
             JsonNode root = mapper.readTree(msg.getData());
             String id = root.path(CardEntity.JSON_FIELD_ID).asText();
             CardEntity before = this.propertiesProvider.getCardEntity(id).orElse(null);
             this.propertiesProvider.deleteCard(id);
+            this.invalidateRenderedDashboards();
             logger.debug("Deleted card {}.", msg);
             this.mqttManager.updateSubscription(before, null);
         } catch (JsonProcessingException ex) {
             logger.warn("Could not delete data={}. {}", msg, ex);
-
-        } finally {
-            lock.unlock();
         }
     }
 
+    private void invalidateRenderedDashboards() {
+        long version = this.configSnapshotProvider.getSnapshot().getVersion();
+        this.renderedDashboards.set(new RenderedDashboards(version, Map.of()));
+        logger.debug("Rendered dashboards have been invalidated. Version={}.", version);
+    }
+
+    /**
+     * Immutable set of rendered dashboards for one version of the settings.
+     */
+    private record RenderedDashboards(long version, Map<String, String> dashboards) {
+
+        RenderedDashboards with(String key, String data) {
+            Map<String, String> copy = new HashMap<>(this.dashboards);
+            copy.put(key, data);
+            return new RenderedDashboards(this.version, Map.copyOf(copy));
+        }
+    }
 }
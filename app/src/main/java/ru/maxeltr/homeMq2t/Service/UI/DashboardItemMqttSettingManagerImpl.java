@@ -28,8 +28,6 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.Instant;
 import java.util.Optional;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,12 +41,15 @@ import ru.maxeltr.homeMq2t.Model.Msg;
 import ru.maxeltr.homeMq2t.Model.Status;
 import ru.maxeltr.homeMq2t.Model.ViewModel;
 
+/**
+ * Manager of the MQTT settings. Reads take no locks, saves are serialized.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
 public class DashboardItemMqttSettingManagerImpl implements DashboardItemManager {
 
     private static final Logger logger = LoggerFactory.getLogger(DashboardItemMqttSettingManagerImpl.class);
 
-    private final Lock lock = new ReentrantLock();
-
     @Autowired
     private AppProperties propertiesProvider;
 
@@ -71,26 +72,21 @@ public class DashboardItemMqttSettingManagerImpl implements DashboardItemManager
 
     @Override
     public Msg getItem(Msg msg) {
-        lock.lock();
-        try {
-            Optional<ViewModel<MqttSettingsEntity>> mqttSettingsOpt;
-            if (StringUtils.isNotBlank(msg.getId())) {
-                mqttSettingsOpt = this.propertiesProvider.getMqttSettings(msg.getId());
-            } else {
-                mqttSettingsOpt = this.propertiesProvider.getEmptyMqttSettings();
-            }
-
-            return msg.toBuilder()
-                    .data(mqttSettingsOpt
-                            .map(viewModel -> jsonFormatter.createAndEncodeHtml(viewModel.getHtml(), Status.OK))
-                            .orElseGet(() -> jsonFormatter.createAndEncodeHtml("", Status.FAIL))
-                    )
-                    .type(MediaTypes.TEXT_HTML_BASE64.getValue())
-                    .timestamp(String.valueOf(Instant.now().toEpochMilli()))
-                    .build();
-        } finally {
-            lock.unlock();
+        Optional<ViewModel<MqttSettingsEntity>> mqttSettingsOpt;
+        if (StringUtils.isNotBlank(msg.getId())) {
+            mqttSettingsOpt = this.propertiesProvider.getMqttSettings(msg.getId());
+        } else {
+            mqttSettingsOpt = this.propertiesProvider.getEmptyMqttSettings();
         }
+
+        return msg.toBuilder()
+                .data(mqttSettingsOpt
+                        .map(viewModel -> jsonFormatter.createAndEncodeHtml(viewModel.getHtml(), Status.OK))
+                        .orElseGet(() -> jsonFormatter.createAndEncodeHtml("", Status.FAIL))
+                )
+                .type(MediaTypes.TEXT_HTML_BASE64.getValue())
+                .timestamp(String.valueOf(Instant.now().toEpochMilli()))
+                .build();
     }
 
     @Override
@@ -99,8 +95,7 @@ public class DashboardItemMqttSettingManagerImpl implements DashboardItemManager
     }
 
     @Override
-    public void saveItem(Msg msg) {
-        lock.lock();
+    public synchronized void saveItem(Msg msg) {
         try {
             MqttSettingsEntity mqttSettingsEntity = mapper.readValue(msg.getData(), MqttSettingsEntity.class);
             MqttSettingsEntity before = this.propertiesProvider.getMqttSettingsEntity().orElse(null);
@@ -109,8 +104,6 @@ public class DashboardItemMqttSettingManagerImpl implements DashboardItemManager
             //this.mqttManager.updateSubscription(before, entity); //TODO update will message topic... or reconnect?
         } catch (JsonProcessingException ex) {
             logger.warn("Could not save data={}. {}", msg, ex);
-        } finally {
-            lock.unlock();
         }
     }
 
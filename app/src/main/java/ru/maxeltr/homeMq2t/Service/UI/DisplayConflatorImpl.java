@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Service.UI;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import ru.maxeltr.homeMq2t.Model.Msg;
+
+/**
+ * Conflating display stage. Each card has one slot holding the newest message
+ * that has not been displayed yet, a newer message replaces it. A card has at
+ * most one drain task scheduled, so the messages of a card are displayed in
+ * order, and a card is not refreshed more often than once per
+ * display-min-interval. Drain tasks run on a small dedicated pool, so the
+ * amount of queued work is bounded by the amount of cards regardless of the
+ * inbound message rate.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class DisplayConflatorImpl implements DisplayConflator {
+
+    private static final Logger logger = LoggerFactory.getLogger(DisplayConflatorImpl.class);
+
+    @Autowired
+    @Qualifier("getDisplayManager")
+    private DisplayManager displayManager;
+
+    @Value("${display-workers:2}")
+    private int workers;
+
+    @Value("${display-min-interval:100}")
+    private long minInterval;
+
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void postConstruct() {
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, this.workers), new DefaultThreadFactory("Mq2tDisplay", true));
+        this.executor.setRemoveOnCancelPolicy(true);
+        logger.info("Display conflator has been started. Workers={}, min interval={} ms.", this.executor.getCorePoolSize(), this.minInterval);
+    }
+
+    @Override
+    public void submit(Msg msg, String cardNumber) {
+        Slot slot = this.slots.computeIfAbsent(cardNumber, Slot::new);
+        if (slot.pending.getAndSet(msg) != null) {
+            logger.trace("Pending message for card={} has been replaced by a newer one.", cardNumber);
+        }
+        this.schedule(slot);
+    }
+
+    @Override
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+        logger.info("Display conflator has been stopped.");
+    }
+
+    private void schedule(Slot slot) {
+        if (!slot.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        long delay = TimeUnit.MILLISECONDS.toNanos(this.minInterval) - (System.nanoTime() - slot.lastDisplayed);
+        try {
+            this.executor.schedule(() -> this.drain(slot), Math.max(0, delay), TimeUnit.NANOSECONDS);
+        } catch (RuntimeException ex) {
+            slot.scheduled.set(false);
+            logger.warn("Could not schedule display for card={}. {}", slot.cardNumber, ex.getMessage());
+        }
+    }
+
+    private void drain(Slot slot) {
+        Msg msg = slot.pending.getAndSet(null);
+        if (msg != null) {
+            slot.lastDisplayed = System.nanoTime();
+            try {
+                this.displayManager.display(msg, slot.cardNumber);
+            } catch (RuntimeException ex) {
+                logger.warn("Could not display message id={} to card={}.", msg.getId(), slot.cardNumber, ex);
+            }
+        }
+
+        slot.scheduled.set(false);
+        if (slot.pending.get() != null) {
+            this.schedule(slot);
+        }
+    }
+
+    private static final class Slot {
+
+        private final String cardNumber;
+
+        private final AtomicReference<Msg> pending = new AtomicReference<>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile long lastDisplayed;
+
+        Slot(String cardNumber) {
+            this.cardNumber = cardNumber;
+            this.lastDisplayed = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+        }
+    }
+}
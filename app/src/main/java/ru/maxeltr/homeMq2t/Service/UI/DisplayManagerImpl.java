@@ -25,7 +25,6 @@ package ru.maxeltr.homeMq2t.Service.UI;
 
 import io.netty.handler.codec.mqtt.MqttQoS;
 import java.time.Instant;
-import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -35,7 +34,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.http.MediaType;
 import ru.maxeltr.homeMq2t.Config.CardPropertiesProvider;
+import ru.maxeltr.homeMq2t.Config.JsonPathExpression;
 import ru.maxeltr.homeMq2t.Controller.OutputUIController;
+import ru.maxeltr.homeMq2t.Controller.OutputUIControllerImpl;
 import ru.maxeltr.homeMq2t.Model.Msg;
 import ru.maxeltr.homeMq2t.Mqtt.MqttUtils;
 import ru.maxeltr.homeMq2t.Service.ServiceMediator;
@@ -61,6 +62,9 @@ public class DisplayManagerImpl implements DisplayManager {
     @Autowired
     private HtmlSanitizer htmlSanitizer;
 
+    @Autowired
+    private LastValueCache lastValueCache;
+
     @Override
     public void display(Msg msg, String cardNumber) {
         var message = msg.toBuilder();
@@ -76,19 +80,20 @@ public class DisplayManagerImpl implements DisplayManager {
         }
 
         if (message.getType().equalsIgnoreCase(MediaType.APPLICATION_JSON_VALUE)) {
-            List<String> jsonPathExpressions = Arrays.asList(StringUtils.split(this.appProperties.getCardJsonPathExpression(cardNumber), " "));
-            if (!jsonPathExpressions.isEmpty()) {
-                if (jsonPathExpressions.size() == 1) {
-                    message.data(this.jsonFormatter.parseAndCreateJson(message.getData(), jsonPathExpressions.get(0)));
-                } else {
-                    message.data(this.jsonFormatter.parseAndCreateJson(message.getData(), jsonPathExpressions));
-                }
+            List<JsonPathExpression> jsonPaths = this.appProperties.getCardJsonPaths(cardNumber);
+            if (!jsonPaths.isEmpty()) {
+                message.data(this.jsonFormatter.extractAndCreateJson(message.getData(), jsonPaths));
             }
         }
 
-        message.data(this.htmlSanitizer.sanitize(message.getData()));
+        message.data(this.htmlSanitizer.sanitize(message.getData(), message.getType()));
+
+        Msg displayed = message.build();
+        if (!OutputUIControllerImpl.DASHBOARD_RECEIVER.equals(cardNumber)) {
+            this.lastValueCache.put(cardNumber, displayed);
+        }
 
         logger.debug("Display data={}. Card={}", message, cardNumber);
-        this.uiController.display(message.build(), cardNumber);
+        this.uiController.display(displayed, cardNumber);
     }
 }
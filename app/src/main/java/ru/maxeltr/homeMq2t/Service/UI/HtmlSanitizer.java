@@ -27,4 +27,15 @@ public interface HtmlSanitizer {
 
     public String sanitize(String data);
 
+    /**
+     * Sanitizes the data choosing the strategy by the media type of the data.
+     * Data that cannot contain markup is validated with a linear scan and
+     * returned as is, everything else is cleaned as html.
+     *
+     * @param data the data to sanitize
+     * @param mediaType the media type of the data, may be null
+     * @return the sanitized data
+     */
+    public String sanitize(String data, String mediaType);
+
 }
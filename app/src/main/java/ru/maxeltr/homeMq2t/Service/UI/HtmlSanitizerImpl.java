@@ -23,19 +23,144 @@
  */
 package ru.maxeltr.homeMq2t.Service.UI;
 
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Safelist;
+import org.springframework.beans.factory.annotation.Value;
 
+/**
+ * Html sanitizer that chooses the strategy by the media type of the data.
+ * Base64 encoded images and text without markup are checked with a linear
+ * scan and returned as is, because Jsoup would return the same string after
+ * building a full DOM. Everything else is cleaned by Jsoup with the basic
+ * safelist. Cleaned results are kept in a small direct-mapped memo keyed by
+ * the hash of the data, so a repeated payload (e.g. a retained message) is not
+ * cleaned twice.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
 public class HtmlSanitizerImpl implements HtmlSanitizer {
 
     private static final Logger logger = LoggerFactory.getLogger(HtmlSanitizerImpl.class);
 
+    private static final String IMAGE_TYPE_PREFIX = "image/";
+
+    private static final String HTML_TYPE = "text/html";
+
+    @Value("${sanitizer-memo-size:256}")
+    private int memoSize;
+
+    @Value("${sanitizer-memo-max-length:65536}")
+    private int memoMaxLength;
+
+    private AtomicReferenceArray<MemoEntry> memo;
+
+    private int memoMask;
+
+    @PostConstruct
+    public void postConstruct() {
+        int size = Integer.highestOneBit(Math.max(1, this.memoSize));
+        this.memo = new AtomicReferenceArray<>(size);
+        this.memoMask = size - 1;
+    }
+
     @Override
     public String sanitize(String data) {
+        return this.sanitize(data, null);
+    }
+
+    @Override
+    public String sanitize(String data, String mediaType) {
+        if (StringUtils.isEmpty(data)) {
+            return data;
+        }
+
+        if (Strings.CI.startsWith(mediaType, IMAGE_TYPE_PREFIX)) {
+            if (isBase64(data)) {
+                logger.trace("Base64 data of type={} does not need sanitizing. Length={}.", mediaType, data.length());
+                return data;
+            }
+        } else if (!Strings.CI.startsWith(mediaType, HTML_TYPE) && isPlainText(data)) {
+            logger.trace("Data of type={} does not contain markup. Length={}.", mediaType, data.length());
+            return data;
+        }
+
+        return this.clean(data);
+    }
+
+    private String clean(String data) {
+        if (this.memo == null || data.length() > this.memoMaxLength) {
+            logger.debug("Sanitizing html data={}.", StringUtils.abbreviate(data, 128));
+            return Jsoup.clean(data, Safelist.basic());
+        }
+
+        int hash = data.hashCode();
+        int index = (hash ^ (hash >>> 16)) & this.memoMask;
+        MemoEntry entry = this.memo.get(index);
+        if (entry != null && entry.hash == hash && entry.data.equals(data)) {
+            logger.trace("Sanitized data has been taken from memo. Length={}.", data.length());
+            return entry.result;
+        }
+
         logger.debug("Sanitizing html data={}.", StringUtils.abbreviate(data, 128));
-        return Jsoup.clean(data, Safelist.basic());
+        String result = Jsoup.clean(data, Safelist.basic());
+        this.memo.set(index, new MemoEntry(hash, data, result));
+
+        return result;
+    }
+
+    /**
+     * Checks that the data consists of base64 alphabet characters only. Such
+     * data is returned by Jsoup unchanged.
+     */
+    private static boolean isBase64(String data) {
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '+' || c == '/' || c == '=' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that Jsoup would return the data unchanged: there are no markup
+     * characters, no entities, no non-breaking spaces or unpaired surrogates,
+     * and whitespace is limited to single inner spaces, which Jsoup does not
+     * normalize.
+     */
+    private static boolean isPlainText(String data) {
+        int last = data.length() - 1;
+        for (int i = 0; i <= last; i++) {
+            char c = data.charAt(i);
+            switch (c) {
+                case '<', '>', '&', '\u00A0' -> {
+                    return false;
+                }
+                case ' ' -> {
+                    if (i == 0 || i == last || data.charAt(i + 1) == ' ') {
+                        return false;
+                    }
+                }
+                default -> {
+                    if (Character.isHighSurrogate(c) && i < last && Character.isLowSurrogate(data.charAt(i + 1))) {
+                        i++;
+                    } else if (Character.isSurrogate(c) || Character.isWhitespace(c) || Character.isISOControl(c)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private record MemoEntry(int hash, String data, String result) {
+
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Service.UI;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.maxeltr.homeMq2t.Config.JsonPathExpression;
+
+/**
+ * Reads the values of simple JsonPath expressions in one forward pass of a
+ * streaming parser. No tree of the document is built, subtrees that are not
+ * on the requested paths are skipped, and the pass stops as soon as all
+ * values have been found.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+final class JsonFieldProjector {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonFieldProjector.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JsonFieldProjector() {
+    }
+
+    /**
+     * Reads the values of the simple expressions. A value is resolved if it is
+     * a scalar (null for json null) or if the path does not exist (empty
+     * string). Values of complex expressions and values that are objects or
+     * arrays are left unresolved.
+     *
+     * @param json the json document
+     * @param expressions the expressions
+     * @param values the array for the values, indexed as the expressions
+     * @param resolved the array of flags of resolved values, indexed as the
+     * expressions
+     * @return false if the document could not be parsed, the values are not
+     * resolved then
+     */
+    static boolean project(String json, List<JsonPathExpression> expressions, String[] values, boolean[] resolved) {
+        Node root = new Node();
+        int pending = 0;
+        for (int i = 0; i < expressions.size(); i++) {
+            JsonPathExpression expression = expressions.get(i);
+            if (expression.isSimple()) {
+                Node node = root;
+                for (Object step : expression.getSteps()) {
+                    node = node.child(step);
+                }
+                node.targets.add(i);
+                ++pending;
+            }
+        }
+        if (pending == 0) {
+            return true;
+        }
+
+        Walk walk = new Walk(values, resolved, pending);
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != null) {
+                walk.value(parser, root);
+            }
+        } catch (IOException ex) {
+            logger.debug("Could not parse json by streaming parser. {}", ex.getMessage());
+            Arrays.fill(resolved, false);
+            return false;
+        }
+
+        //the paths that have not been found do not exist
+        for (int i = 0; i < expressions.size(); i++) {
+            if (expressions.get(i).isSimple() && !resolved[i] && !walk.structured[i]) {
+                values[i] = "";
+                resolved[i] = true;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Node {
+
+        private final List<Integer> targets = new ArrayList<>(1);
+
+        private Map<Object, Node> children;
+
+        Node child(Object step) {
+            if (this.children == null) {
+                this.children = new HashMap<>();
+            }
+
+            return this.children.computeIfAbsent(step, s -> new Node());
+        }
+    }
+
+    private static final class Walk {
+
+        private final String[] values;
+
+        private final boolean[] resolved;
+
+        private final boolean[] structured;
+
+        private int pending;
+
+        Walk(String[] values, boolean[] resolved, int pending) {
+            this.values = values;
+            this.resolved = resolved;
+            this.structured = new boolean[resolved.length];
+            this.pending = pending;
+        }
+
+        /**
+         * Handles the value at the current token of the parser.
+         */
+        void value(JsonParser parser, Node node) throws IOException {
+            JsonToken token = parser.currentToken();
+            boolean container = token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY;
+            for (int target : node.targets) {
+                if (container) {
+                    this.structured[target] = true;    //left for the full parser
+                } else {
+                    this.values[target] = scalar(parser, token);
+                    this.resolved[target] = true;
+                }
+                --this.pending;
+            }
+            if (!container) {
+                return;
+            }
+            if (node.children == null) {
+                parser.skipChildren();
+                return;
+            }
+
+            if (token == JsonToken.START_OBJECT) {
+                while (this.pending > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                    Node child = node.children.get(parser.currentName());
+                    parser.nextToken();
+                    if (child != null) {
+                        this.value(parser, child);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                int index = 0;
+                while (this.pending > 0 && parser.nextToken() != JsonToken.END_ARRAY) {
+                    Node child = node.children.get(index++);
+                    if (child != null) {
+                        this.value(parser, child);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+
+        private static String scalar(JsonParser parser, JsonToken token) throws IOException {
+            return switch (token) {
+                case VALUE_NULL ->
+                    null;
+                case VALUE_NUMBER_FLOAT ->
+                    String.valueOf(parser.getDoubleValue());
+                default ->
+                    parser.getText();
+            };
+        }
+    }
+}
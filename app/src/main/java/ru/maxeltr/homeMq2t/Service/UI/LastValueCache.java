@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2025 Maxim Eltratov <<Maxim.Eltratov@ya.ru>>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ru.maxeltr.homeMq2t.Service.UI;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import ru.maxeltr.homeMq2t.Model.Msg;
+import ru.maxeltr.homeMq2t.Model.MsgImpl;
+
+/**
+ * Bounded cache of the last displayed message of each card. It is used to
+ * fill the cards of a dashboard at once when the dashboard is loaded, instead
+ * of waiting for the next message of each topic.
+ * <p>
+ * The size of the cache is limited by last-value-cache-max-bytes, the least
+ * recently used cards are evicted first. Data longer than
+ * last-value-cache-offheap-threshold characters (e.g. Base64 images) is kept
+ * UTF-8 encoded in pooled direct buffers outside of the heap.
+ *
+ * @author Maxim Eltratov <<Maxim.Eltratov@ya.ru>>
+ */
+public class LastValueCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastValueCache.class);
+
+    /**
+     * Approximate size of an entry without the data.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    @Value("${last-value-cache-max-bytes:33554432}")
+    private long maxBytes;
+
+    @Value("${last-value-cache-offheap-threshold:8192}")
+    private int offHeapThreshold;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    /**
+     * Stores the message as the last value of the card.
+     *
+     * @param cardNumber the number of the card
+     * @param msg the displayed message
+     */
+    public void put(String cardNumber, Msg msg) {
+        Entry entry = this.createEntry(msg);
+        if (entry.size > this.maxBytes) {
+            entry.release();
+            this.remove(cardNumber);
+            logger.debug("Last value of card={} is larger than the cache. Size={}.", cardNumber, entry.size);
+            return;
+        }
+
+        synchronized (this.entries) {
+            Entry previous = this.entries.put(cardNumber, entry);
+            if (previous != null) {
+                this.size -= previous.size;
+                previous.release();
+            }
+            this.size += entry.size;
+
+            Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+            while (this.size > this.maxBytes && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                this.size -= eldest.getValue().size;
+                eldest.getValue().release();
+                logger.debug("Last value of card={} has been evicted.", eldest.getKey());
+            }
+        }
+    }
+
+    public void remove(String cardNumber) {
+        synchronized (this.entries) {
+            Entry previous = this.entries.remove(cardNumber);
+            if (previous != null) {
+                this.size -= previous.size;
+                previous.release();
+            }
+        }
+    }
+
+    /**
+     * Returns the last values of the cards accepted by the filter.
+     *
+     * @param filter the filter of card numbers
+     * @return the last values in the order of use
+     */
+    public List<CardValue> getValues(Predicate<String> filter) {
+        List<CardValue> values = new ArrayList<>();
+        synchronized (this.entries) {
+            //iterate over a copy, since access order would be changed by get
+            for (Map.Entry<String, Entry> e : new ArrayList<>(this.entries.entrySet())) {
+                if (filter.test(e.getKey())) {
+                    values.add(new CardValue(e.getKey(), e.getValue().toMsg()));
+                }
+            }
+        }
+
+        return values;
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.values().forEach(Entry::release);
+            this.entries.clear();
+            this.size = 0;
+        }
+        logger.debug("Last value cache has been cleared.");
+    }
+
+    private Entry createEntry(Msg msg) {
+        String data = msg.getData();
+        if (data == null || data.length() < this.offHeapThreshold) {
+            int length = data == null ? 0 : data.length();
+            return new Entry(msg.getId(), msg.getType(), msg.getTimestamp(), data, null, ENTRY_OVERHEAD + 2L * length);
+        }
+
+        int length = ByteBufUtil.utf8Bytes(data);
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+        ByteBufUtil.reserveAndWriteUtf8(buf, data, length);
+        return new Entry(msg.getId(), msg.getType(), msg.getTimestamp(), null, buf, ENTRY_OVERHEAD + length);
+    }
+
+    /**
+     * The last value of the card.
+     */
+    public record CardValue(String card, Msg msg) {
+
+    }
+
+    private record Entry(String id, String type, String timestamp, String data, ByteBuf offHeapData, long size) {
+
+        Msg toMsg() {
+            return MsgImpl.newBuilder()
+                    .id(this.id)
+                    .type(this.type)
+                    .timestamp(this.timestamp)
+                    .data(this.offHeapData != null ? this.offHeapData.toString(StandardCharsets.UTF_8) : this.data)
+                    .build();
+        }
+
+        void release() {
+            if (this.offHeapData != null) {
+                this.offHeapData.release();
+            }
+        }
+    }
+}
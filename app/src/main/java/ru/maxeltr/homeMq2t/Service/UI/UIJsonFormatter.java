@@ -24,6 +24,7 @@
 package ru.maxeltr.homeMq2t.Service.UI;
 
 import java.util.List;
+import ru.maxeltr.homeMq2t.Config.JsonPathExpression;
 import ru.maxeltr.homeMq2t.Model.Status;
 
 public interface UIJsonFormatter {
@@ -32,6 +33,8 @@ public interface UIJsonFormatter {
 
     public String parseAndCreateJson(String msg, List<String> jsonPathExpressions);
 
+    public String extractAndCreateJson(String msg, List<JsonPathExpression> jsonPaths);
+
     public String createAndEncodeHtml(String dashboard, Status status);
 
 }
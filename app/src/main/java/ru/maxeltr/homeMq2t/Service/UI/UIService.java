@@ -23,6 +23,7 @@
  */
 package ru.maxeltr.homeMq2t.Service.UI;
 
+import java.util.List;
 import ru.maxeltr.homeMq2t.Model.Msg;
 import ru.maxeltr.homeMq2t.Service.ServiceMediator;
 
@@ -50,6 +51,14 @@ public interface UIService {
 
     public void displayCardDashboard(Msg msg);
 
+    /**
+     * Returns the last displayed values of the cards of the dashboard.
+     *
+     * @param dashboardNumber the number of the dashboard
+     * @return the last values of the cards
+     */
+    public List<LastValueCache.CardValue> getDashboardSnapshot(String dashboardNumber);
+
     public void displayMqttSettings(Msg msg);
 
     public void saveMqttSettings(Msg msg);
@@ -23,14 +23,15 @@
  */
 package ru.maxeltr.homeMq2t.Service.UI;
 
+import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
 import ru.maxeltr.homeMq2t.Model.Msg;
 import org.springframework.beans.factory.annotation.Qualifier;
 import ru.maxeltr.homeMq2t.Config.AppProperties;
+import ru.maxeltr.homeMq2t.Config.CardPropertiesProvider;
 import ru.maxeltr.homeMq2t.Service.ServiceMediator;
 
 public class UIServiceImpl implements UIService {
@@ -63,6 +64,16 @@ public class UIServiceImpl implements UIService {
     @Qualifier("getDisplayManager")
     private DisplayManager displayManager;
 
+    @Autowired
+    private DisplayConflator displayConflator;
+
+    @Autowired
+    private LastValueCache lastValueCache;
+
+    @Autowired
+    @Qualifier("getCardPropertiesProvider")
+    private CardPropertiesProvider cardPropertiesProvider;
+
     @Override
     public void setMediator(ServiceMediator mediator) {
         this.mediator = mediator;
@@ -76,30 +87,40 @@ public class UIServiceImpl implements UIService {
     @Override
     public void connect() {
         logger.debug("Do connect.");
-        this.display(this.connectManager.connect(), "dashboard");
+        this.displayManager.display(this.connectManager.connect(), "dashboard");
     }
 
     @Override
     public void displayCardDashboard(Msg msg) {
         logger.debug("Do display dashboard {}.", msg);
-        this.display(this.cardManager.getItemsByDashboard(msg), "dashboard");
+        this.displayManager.display(this.cardManager.getItemsByDashboard(msg), "dashboard");
+    }
+
+    @Override
+    public List<LastValueCache.CardValue> getDashboardSnapshot(String dashboardNumber) {
+        List<LastValueCache.CardValue> values = this.lastValueCache.getValues(
+                card -> dashboardNumber.equals(this.cardPropertiesProvider.getCardDashboardNumber(card))
+        );
+        logger.debug("Snapshot of dashboard={} has been created. Amount of cards={}.", dashboardNumber, values.size());
+
+        return values;
     }
 
     public void displayStartDashboard(Msg msg) {
         logger.debug("Do display start dashboard {}.", msg);
-        this.display(this.cardManager.getItemsByDashboard(msg.toBuilder().id("").build()), "dashboard");
+        this.displayManager.display(this.cardManager.getItemsByDashboard(msg.toBuilder().id("").build()), "dashboard");
     }
 
     @Override
     public void displayCardSettings(Msg msg) {
         logger.debug("Do edit card settings {}.", msg);
-        this.display(this.cardManager.getItem(msg), "dashboard");
+        this.displayManager.display(this.cardManager.getItem(msg), "dashboard");
     }
 
     @Override
     public void displayMqttSettings(Msg msg) {
         logger.debug("Do edit mqtt settings {}.", msg);
-        this.display(this.mqttSettingManager.getItem(msg), "dashboard");
+        this.displayManager.display(this.mqttSettingManager.getItem(msg), "dashboard");
     }
 
     @Override
@@ -149,15 +170,19 @@ public class UIServiceImpl implements UIService {
         logger.debug("Do run local task from card {}.", msg.getId());
         Msg result = this.localTaskManager.run(msg);
         if (StringUtils.isNotBlank(result.getData())) {
-            this.display(result, msg.getId());
+            this.displayManager.display(result, msg.getId());
         }
     }
 
-    @Async("processExecutor")
+    /**
+     * Passes the message to the conflating display stage, so that only the
+     * newest message of a card is displayed if messages come faster than the
+     * card can be refreshed.
+     */
     @Override
     public void display(Msg msg, String cardNumber) {
         logger.debug("Do display message id={} to card {}.", msg.getId(), cardNumber);
-        this.displayManager.display(msg, cardNumber);
+        this.displayConflator.submit(msg, cardNumber);
     }
 
 }
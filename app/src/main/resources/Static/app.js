@@ -2,6 +2,13 @@ let stompClient = null;
 let subDataTopic = '/topic/data';
 let connectTopic = '/app/connect';
 let dataSubscription = null;
+let cardTopic = '/topic/dashboard/{dashboard}/cards';
+let cardSubscription = null;
+let cardSubscriptionDashboard = null;
+let snapshotTopic = '/app/dashboard/{dashboard}/snapshot';
+let updatedCards = new Set();
+let pendingCards = new Map();
+let cardsFrameRequested = false;
 let getCardSettingsTopic = "/app/getCardSettings";
 let getMqttSettingsTopic = "/app/getMqttSettings";
 let saveCardTopic = "/app/saveCard";
@@ -26,6 +33,8 @@ function connect() {
     stompClient.connect({}, function (frame) {
         console.log('Connected: ' + frame);
         setConnected(true);
+        cardSubscription = null;
+        cardSubscriptionDashboard = null;
         dataSubscription = stompClient.subscribe(subDataTopic, function (message) {
             showData(JSON.parse(message.body), message.headers.card);
         });
@@ -39,6 +48,67 @@ function connect() {
     };
 }
 
+function followDashboard() {
+    let el = document.getElementById('dashboard-cards');
+    let dashboardNumber = el ? el.dataset.dashboardNumber : null;
+    if (dashboardNumber === cardSubscriptionDashboard) {
+        return;
+    }
+    if (cardSubscription) {
+        cardSubscription.unsubscribe();
+        cardSubscription = null;
+        cardSubscriptionDashboard = null;
+    }
+    if (dashboardNumber) {
+        //receive updates of the cards on the shown dashboard only
+        updatedCards.clear();
+        pendingCards.clear();
+        //each frame carries a batch of card values
+        cardSubscription = stompClient.subscribe(cardTopic.replace('{dashboard}', dashboardNumber), function (message) {
+            let values = JSON.parse(message.body);
+            values.forEach(function (value) {
+                updatedCards.add(value.card);
+            });
+            queueCardValues(values);
+        });
+        cardSubscriptionDashboard = dashboardNumber;
+        //the last values of the cards come in one reply to this session only
+        let snapshotSubscription = stompClient.subscribe(snapshotTopic.replace('{dashboard}', dashboardNumber), function (message) {
+            snapshotSubscription.unsubscribe();
+            showSnapshot(JSON.parse(message.body), dashboardNumber);
+        });
+    }
+}
+
+function showSnapshot(values, dashboardNumber) {
+    if (dashboardNumber !== cardSubscriptionDashboard) {
+        return;
+    }
+    //a card updated after the subscription shows a newer value already
+    queueCardValues(values.filter(function (value) {
+        return !updatedCards.has(value.card);
+    }));
+}
+
+function queueCardValues(values) {
+    values.forEach(function (value) {
+        pendingCards.set(value.card, value.msg);
+    });
+    if (!cardsFrameRequested && pendingCards.size > 0) {
+        cardsFrameRequested = true;
+        window.requestAnimationFrame(showCardValues);
+    }
+}
+
+function showCardValues() {
+    cardsFrameRequested = false;
+    let values = pendingCards;
+    pendingCards = new Map();
+    values.forEach(function (msg, card) {
+        showData(msg, card);
+    });
+}
+
 function goToStartDashboard() {
     stompClient.send("/app/displayCardDashboard", {}, JSON.stringify({'id': ""}));
 }
@@ -49,6 +119,11 @@ function disconnect() {
         if (dataSubscription) {
             stompClient.unsubscribe();
         }
+        if (cardSubscription) {
+            cardSubscription.unsubscribe();
+            cardSubscription = null;
+            cardSubscriptionDashboard = null;
+        }
         stompClient.disconnect();
     }
     setConnected(false);
@@ -72,6 +147,17 @@ function showImage(message, receiverId) {
     }
 }
 
+function showBinaryImage(message, receiverId) {
+    //message.data is the url of the raw image, a new url is sent for each image
+    setInnerHtml(receiverId + '-payload', '<img src="' + message.data + '" class="img-fluid" alt="...">');
+
+    let saveButton = document.getElementById(receiverId + '-save');
+    if (saveButton !== null) {
+        saveButton.setAttribute('href', message.data);
+        saveButton.classList.remove("disabled");
+    }
+}
+
 function showPlainText(message, receiverId) {
     setInnerHtml(receiverId + '-payload', '<p>' + message.data + '</p>');
 }
@@ -94,6 +180,7 @@ function showBase64(payload, receiverId) {
         str = b64ToUtf8(payload);
         if (receiverId === 'dashboard') {
             setInnerHtml('dashboard', str);
+            followDashboard();
         } else {
             setInnerHtml(receiverId + '-payload', '<p>' + str + '</p>');
         }
@@ -163,6 +250,10 @@ function showData(message, receiverId) {
             break;
 
         default:
+            if (type.startsWith('IMAGE/') && !type.includes('BASE64')) {
+                showBinaryImage(message, receiverId);
+                break;
+            }
             setInnerHtml(receiverId + '-payload', '<p style=\"color:red;\">Error. Incorrect payload type</p>');
             console.error("Error. Incorrect payload type for card=" + receiverId + ". Type is " + message.type);
     }